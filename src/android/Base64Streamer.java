@@ -0,0 +1,88 @@
+package com.spoon.imagepicker;
+
+import android.util.Base64;
+import android.util.Base64OutputStream;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Base64 encodes picked items in fixed size chunks, so the heap used does not grow with
+ * the size of the file: neither the raw bytes nor the encoded string of a whole file are
+ * ever held at once.
+ */
+class Base64Streamer {
+    // A multiple of 3, so that the encoded chunks can be concatenated without padding in between
+    static final int CHUNK_SIZE = 3 * 64 * 1024;
+
+    interface ChunkListener {
+        /**
+         * @param sequence position of the chunk in the file, starting at 0
+         * @param data the Base64 encoded chunk
+         * @param last true for the final chunk of the file
+         */
+        void onChunk(int sequence, String data, boolean last) throws IOException;
+    }
+
+    /**
+     * Encodes input chunk by chunk and hands every chunk to listener. An empty input
+     * produces a single empty last chunk.
+     *
+     * @return the number of chunks
+     */
+    static int stream(InputStream input, ChunkListener listener) throws IOException {
+        byte[] current = new byte[CHUNK_SIZE];
+        byte[] next = new byte[CHUNK_SIZE];
+        int currentLength = fill(input, current);
+        int sequence = 0;
+        while (true) {
+            // Read ahead so the listener knows which chunk is the last one
+            int nextLength = currentLength < CHUNK_SIZE ? 0 : fill(input, next);
+            boolean last = nextLength == 0;
+            listener.onChunk(sequence++, Base64.encodeToString(current, 0, currentLength, Base64.NO_WRAP), last);
+            if (last) {
+                return sequence;
+            }
+            byte[] swap = current;
+            current = next;
+            next = swap;
+            currentLength = nextLength;
+        }
+    }
+
+    /**
+     * Writes the Base64 encoding of input to destination, through a temporary file so that
+     * a partial encoding is never left behind.
+     */
+    static void writeSidecar(InputStream input, File destination) throws IOException {
+        File temp = File.createTempFile(".base64", ".part", destination.getParentFile());
+        try {
+            try (OutputStream output = new Base64OutputStream(new FileOutputStream(temp), Base64.NO_WRAP)) {
+                byte[] buffer = new byte[CHUNK_SIZE];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, read);
+                }
+            }
+            if (!temp.renameTo(destination)) {
+                throw new IOException("Cannot move " + temp + " to " + destination);
+            }
+        } finally {
+            if (temp.exists()) {
+                temp.delete();
+            }
+        }
+    }
+
+    private static int fill(InputStream input, byte[] buffer) throws IOException {
+        int length = 0;
+        int read;
+        while (length < buffer.length && (read = input.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+        }
+        return length;
+    }
+}
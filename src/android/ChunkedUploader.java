@@ -0,0 +1,422 @@
+package com.spoon.imagepicker;
+
+import android.content.ContentResolver;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams picked items straight from their content uri to an HTTP endpoint, in chunks, so
+ * nothing is written to the app storage and every byte is read once.
+ *
+ * Each chunk is a request of its own carrying a Content-Range header and the X-Upload-Id of
+ * the item, stable across resumed jobs. Up to maxInFlightChunks chunks of an item are sent
+ * at once, and the reader blocks until one of them is done, so at most maxInFlightChunks + 2
+ * chunk buffers are held per item. The last chunk is only sent once every other one is
+ * acknowledged, its response body is the result of the item.
+ *
+ * A resumed upload first asks the server how much of the item it holds, with an empty
+ * request whose Content-Range only carries the total (see contentRange). A 308 with
+ * Range: bytes=0-<last> resumes after last, a 308 without Range or any error starts over,
+ * and a 2xx means the item is complete, its body being the result.
+ */
+class ChunkedUploader {
+    static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    static final int DEFAULT_MAX_IN_FLIGHT_CHUNKS = 2;
+    static final int DEFAULT_CONCURRENCY = 2;
+
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 1000;
+    private static final int TIMEOUT_MS = 30000;
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    // Answer to a status request for an item the server holds part of
+    private static final int RESUME_INCOMPLETE = 308;
+
+    /**
+     * Status and body of a chunk request, with the Range header of status requests.
+     */
+    static class Response {
+        final int status;
+        final String body;
+        final String range;
+
+        Response(int status, String body, String range) {
+            this.status = status;
+            this.body = body;
+            this.range = range;
+        }
+
+        boolean isSuccessful() {
+            return this.status >= 200 && this.status < 300;
+        }
+    }
+
+    private final ContentResolver resolver;
+    private final String url;
+    private final String method;
+    private final Map<String, String> headers = new HashMap<>();
+    private final int chunkSize;
+    private final int maxInFlightChunks;
+    // Number of items uploaded at once, used as the parallelism of the import
+    final int concurrency;
+    private final ThreadPoolExecutor pool;
+
+    /**
+     * Reads the upload option of getPictures: url, method (default "POST"), headers,
+     * chunkSize (KB), maxInFlightChunks and concurrency.
+     */
+    ChunkedUploader(ContentResolver resolver, JSONObject params) throws JSONException {
+        this.resolver = resolver;
+        this.url = params.getString("url");
+        this.method = params.has("method") ? params.getString("method").toUpperCase() : "POST";
+        JSONObject headers = params.has("headers") ? params.getJSONObject("headers") : new JSONObject();
+        Iterator<String> names = headers.keys();
+        while (names.hasNext()) {
+            String name = names.next();
+            this.headers.put(name, headers.getString(name));
+        }
+        this.chunkSize = params.has("chunkSize") ? Math.max(MIN_CHUNK_SIZE, params.getInt("chunkSize") * 1024) : DEFAULT_CHUNK_SIZE;
+        this.maxInFlightChunks = params.has("maxInFlightChunks") ? Math.max(1, params.getInt("maxInFlightChunks")) : DEFAULT_MAX_IN_FLIGHT_CHUNKS;
+        this.concurrency = params.has("concurrency") ? Math.max(1, params.getInt("concurrency")) : DEFAULT_CONCURRENCY;
+        int threads = this.concurrency * this.maxInFlightChunks;
+        this.pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Uploads an item on the calling worker thread. listener, when not null, is told about
+     * the bytes acknowledged by the server so far.
+     *
+     * @param uploadId identifies the item to the server across chunks and resumed jobs
+     * @param resume true to ask the server what it holds of an item a previous run may have
+     *               started, and send only the rest
+     * @param probe when not null, parses the head of the first chunk
+     */
+    JSONObject upload(MediaItemMetadata metadata, String uploadId, boolean resume, MediaCopier.ProgressListener listener, HeaderProbe probe) throws IOException, InterruptedException, JSONException {
+        BufferPool buffers = new BufferPool(this.maxInFlightChunks + 2, this.chunkSize);
+        List<Future<Response>> sent = new ArrayList<>();
+        long size = metadata.size;
+        Response status = resume ? this.queryStatus(uploadId, metadata, size > 0 ? size : -1) : null;
+        long offset = status != null && status.status == RESUME_INCOMPLETE ? getResumeOffset(status.range) : 0;
+        AtomicLong uploaded = new AtomicLong(offset);
+        try (InputStream input = this.resolver.openInputStream(metadata.uri)) {
+            if (input == null) {
+                throw new FileNotFoundException("No content for " + metadata.uri);
+            }
+            byte[] current = buffers.take();
+            int currentLength = readFully(input, current);
+            if (probe != null) {
+                probe.parse(current, currentLength);
+            }
+            if (status != null && status.isSuccessful()) {
+                // Every byte was acknowledged before the job stopped, only the head was read
+                return toResult(status, uploadId, metadata, size);
+            }
+            if (offset > 0) {
+                // The head is still read for the probe, the acknowledged bytes are dropped
+                if (offset < currentLength) {
+                    System.arraycopy(current, (int) offset, current, 0, currentLength - (int) offset);
+                    currentLength -= (int) offset;
+                } else {
+                    skip(input, offset - currentLength, current);
+                    currentLength = readFully(input, current);
+                }
+            }
+            if (currentLength == 0) {
+                // An empty item, or one the server holds entirely without having answered
+                // 2xx: there is no chunk to send, an empty one would be a status request
+                return this.finish(status, uploadId, metadata, offset);
+            }
+            while (true) {
+                checkFailures(sent);
+                // Reading ahead tells whether the current chunk is the last one, and the total
+                // size when the provider did not report it
+                byte[] next = buffers.take();
+                int nextLength = readFully(input, next);
+                if (nextLength == 0) {
+                    buffers.release(next);
+                    long total = offset + currentLength;
+                    // Earlier chunks first, so that the final response covers the whole item
+                    for (Future<Response> chunk : sent) {
+                        getChunk(chunk);
+                    }
+                    Response response = this.send(current, currentLength, contentRange(offset, currentLength, total), uploadId, metadata);
+                    if (listener != null) {
+                        synchronized (uploaded) {
+                            listener.onProgress(uploaded.addAndGet(currentLength), total);
+                        }
+                    }
+                    return toResult(response, uploadId, metadata, total);
+                }
+
+                final byte[] chunk = current;
+                final int length = currentLength;
+                final String range = contentRange(offset, length, size > 0 ? size : -1);
+                sent.add(this.pool.submit(() -> {
+                    try {
+                        Response response = this.send(chunk, length, range, uploadId, metadata);
+                        if (listener != null) {
+                            // Chunks complete on several threads, the listener sees one count at a time
+                            synchronized (uploaded) {
+                                listener.onProgress(uploaded.addAndGet(length), size);
+                            }
+                        }
+                        return response;
+                    } finally {
+                        buffers.release(chunk);
+                    }
+                }));
+                offset += length;
+                current = next;
+                currentLength = nextLength;
+            }
+        } finally {
+            // Stops the chunks still in flight when the item failed or was cancelled
+            for (Future<Response> chunk : sent) {
+                chunk.cancel(true);
+            }
+        }
+    }
+
+    void shutdown() {
+        this.pool.shutdownNow();
+    }
+
+    /**
+     * Asks the server what it holds of the item. Returns null when it cannot tell, the item
+     * is then sent from its first byte.
+     */
+    private Response queryStatus(String uploadId, MediaItemMetadata metadata, long total) {
+        String range = contentRange(0, 0, total);
+        try {
+            Response response = this.request(new byte[0], 0, range, uploadId, metadata);
+            if (response.isSuccessful() || response.status == RESUME_INCOMPLETE) {
+                return response;
+            }
+            Log.d("ImagePicker", "ChunkedUploader: HTTP " + response.status + " for the status of " + uploadId);
+        } catch (IOException e) {
+            Log.e("ImagePicker", "ChunkedUploader: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Completes an item with no byte left to send. The server holds all total bytes when it
+     * answers the status request with a 2xx, or with a 308 acknowledging them.
+     *
+     * @param status the answer to the status request of a resumed item, or null to ask
+     */
+    private JSONObject finish(Response status, String uploadId, MediaItemMetadata metadata, long total) throws IOException, JSONException {
+        Response response = status != null ? status : this.queryStatus(uploadId, metadata, total);
+        if (response == null) {
+            throw new IOException("No status for " + uploadId);
+        }
+        long received = response.status == RESUME_INCOMPLETE ? getResumeOffset(response.range) : -1;
+        if (!response.isSuccessful() && received != total) {
+            throw new IOException("The server holds " + Math.max(0, received) + " of the " + total + " bytes of " + uploadId);
+        }
+        return toResult(response, uploadId, metadata, total);
+    }
+
+    private static JSONObject toResult(Response response, String uploadId, MediaItemMetadata metadata, long size) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("uploaded", true);
+        json.put("uploadId", uploadId);
+        json.put("status", response.status);
+        json.put("response", response.body);
+        json.put("name", metadata.getFileName());
+        json.put("size", size);
+        json.put("mimeType", metadata.mimeType);
+        json.put("isVideo", metadata.isVideo());
+        return json;
+    }
+
+    /**
+     * Sends a chunk, retrying network errors and 5xx and 429 responses with a growing delay.
+     */
+    private Response send(byte[] data, int length, String contentRange, String uploadId, MediaItemMetadata metadata) throws IOException, InterruptedException {
+        IOException error = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            if (attempt > 1) {
+                Thread.sleep(RETRY_DELAY_MS * (attempt - 1));
+            }
+            try {
+                Response response = this.request(data, length, contentRange, uploadId, metadata);
+                if (response.isSuccessful()) {
+                    return response;
+                }
+                error = new IOException("HTTP " + response.status + " for " + contentRange);
+                if (response.status < 500 && response.status != 429) {
+                    break;
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+            Log.d("ImagePicker", "ChunkedUploader: attempt " + attempt + " of " + contentRange + ": " + error.getMessage());
+        }
+        throw error;
+    }
+
+    private Response request(byte[] data, int length, String contentRange, String uploadId, MediaItemMetadata metadata) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(this.url).openConnection();
+        try {
+            connection.setRequestMethod(this.method);
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            // A 308 answers status requests, it is not a redirect
+            connection.setInstanceFollowRedirects(false);
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(length);
+            connection.setRequestProperty("Content-Type", "application/octet-stream");
+            connection.setRequestProperty("Content-Range", contentRange);
+            connection.setRequestProperty("X-Upload-Id", uploadId);
+            connection.setRequestProperty("X-File-Name", URLEncoder.encode(metadata.getFileName(), "UTF-8"));
+            if (metadata.mimeType != null) {
+                connection.setRequestProperty("X-File-Type", metadata.mimeType);
+            }
+            for (Map.Entry<String, String> header : this.headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(data, 0, length);
+            }
+            int status = connection.getResponseCode();
+            InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            return new Response(status, body != null ? readBody(body) : "", connection.getHeaderField("Range"));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void checkFailures(List<Future<Response>> sent) throws IOException, InterruptedException {
+        for (Future<Response> chunk : sent) {
+            if (chunk.isDone()) {
+                getChunk(chunk);
+            }
+        }
+    }
+
+    private static Response getChunk(Future<Response> chunk) throws IOException, InterruptedException {
+        try {
+            return chunk.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the Content-Range of length bytes at offset, total being -1 while unknown.
+     */
+    static String contentRange(long offset, int length, long total) {
+        String size = total >= 0 ? String.valueOf(total) : "*";
+        if (length == 0) {
+            return "bytes */" + size;
+        }
+        return "bytes " + offset + "-" + (offset + length - 1) + "/" + size;
+    }
+
+    /**
+     * Returns the number of bytes a Range: bytes=0-<last> header acknowledges, 0 when it is
+     * missing or does not start at the first byte.
+     */
+    static long getResumeOffset(String range) {
+        if (range == null || !range.startsWith("bytes=0-")) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(range.substring("bytes=0-".length()).trim()) + 1;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void skip(InputStream input, long length, byte[] buffer) throws IOException {
+        while (length > 0) {
+            int read = input.read(buffer, 0, (int) Math.min(buffer.length, length));
+            if (read == -1) {
+                throw new IOException("The server holds more bytes than the item has");
+            }
+            length -= read;
+        }
+    }
+
+    private static int readFully(InputStream input, byte[] buffer) throws IOException {
+        int length = 0;
+        int read;
+        while (length < buffer.length && (read = input.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+        }
+        return length;
+    }
+
+    private static String readBody(InputStream input) throws IOException {
+        try (InputStream body = input) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Chunk buffers of an item, allocated on first use and reused once their chunk is sent.
+     * take blocks while every buffer is in use, which bounds the chunks in flight.
+     */
+    private static class BufferPool {
+        private final BlockingQueue<byte[]> free;
+        private final int capacity;
+        private final int bufferSize;
+        private int allocated;
+
+        BufferPool(int capacity, int bufferSize) {
+            this.free = new ArrayBlockingQueue<>(capacity);
+            this.capacity = capacity;
+            this.bufferSize = bufferSize;
+        }
+
+        byte[] take() throws InterruptedException {
+            byte[] buffer = this.free.poll();
+            if (buffer == null && this.allocated < this.capacity) {
+                this.allocated++;
+                return new byte[this.bufferSize];
+            }
+            return buffer != null ? buffer : this.free.take();
+        }
+
+        void release(byte[] buffer) {
+            this.free.offer(buffer);
+        }
+    }
+}
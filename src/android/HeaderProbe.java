@@ -0,0 +1,297 @@
+package com.spoon.imagepicker;
+
+import android.content.ContentResolver;
+import android.media.ExifInterface;
+import android.net.Uri;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the dimensions, EXIF orientation and capture date of an image from the head of its
+ * container (JPEG SOF and EXIF segments, PNG IHDR, WebP VP8 / VP8L / VP8X, HEIF and AVIF
+ * ispe and irot boxes), without decoding it.
+ *
+ * MediaCopier hands it the first HEAD_SIZE bytes while they are copied, so probing costs no
+ * extra read. Fields the head does not hold keep their unknown value and callers fall back
+ * to a bounds decode or ExifInterface.
+ */
+class HeaderProbe {
+    static final int HEAD_SIZE = 128 * 1024;
+
+    private static final String FORMAT_JPEG = "jpeg";
+    private static final String FORMAT_PNG = "png";
+    private static final String FORMAT_WEBP = "webp";
+    private static final String FORMAT_HEIF = "heif";
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+
+    // Stored dimensions, before the orientation is applied
+    int width = -1;
+    int height = -1;
+    // EXIF orientation, ORIENTATION_UNDEFINED when the head does not tell
+    int orientation = ExifInterface.ORIENTATION_UNDEFINED;
+    // Clockwise rotation in degrees, set when the container holds no EXIF orientation
+    int rotation;
+    // Local date and time the picture was taken, as yyyy-MM-ddTHH:mm:ss
+    String captureDate;
+    String format;
+
+    /**
+     * Reads the head of uri and probes it, for items which are not copied.
+     */
+    static HeaderProbe read(ContentResolver resolver, Uri uri) throws IOException {
+        HeaderProbe probe = new HeaderProbe();
+        try (InputStream input = resolver.openInputStream(uri)) {
+            if (input == null) {
+                return probe;
+            }
+            byte[] head = new byte[HEAD_SIZE];
+            int length = 0;
+            int read;
+            while (length < head.length && (read = input.read(head, length, head.length - length)) != -1) {
+                length += read;
+            }
+            probe.parse(head, length);
+        }
+        return probe;
+    }
+
+    boolean hasDimensions() {
+        return this.width > 0 && this.height > 0;
+    }
+
+    /**
+     * Returns the clockwise rotation to apply to display the image, in degrees.
+     */
+    int getRotation() {
+        return getRotation(this.orientation, this.rotation);
+    }
+
+    /**
+     * Returns the clockwise rotation of an EXIF orientation in degrees, or fallback when the
+     * orientation does not rotate the image.
+     */
+    static int getRotation(int orientation, int fallback) {
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                return 90;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                return 180;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                return 270;
+            default:
+                return fallback;
+        }
+    }
+
+    void parse(byte[] data, int length) {
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, length).order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (length >= 2 && u8(buffer, 0) == 0xFF && u8(buffer, 1) == 0xD8) {
+                this.format = FORMAT_JPEG;
+                this.parseJpeg(buffer);
+            } else if (length >= 24 && buffer.getLong(0) == 0x89504E470D0A1A0AL) {
+                this.format = FORMAT_PNG;
+                this.width = buffer.getInt(16);
+                this.height = buffer.getInt(20);
+                this.orientation = ExifInterface.ORIENTATION_NORMAL;
+            } else if (length >= 16 && "RIFF".equals(fourcc(buffer, 0)) && "WEBP".equals(fourcc(buffer, 8))) {
+                this.format = FORMAT_WEBP;
+                this.parseWebp(buffer);
+            } else if (length >= 12 && "ftyp".equals(fourcc(buffer, 4))) {
+                this.format = FORMAT_HEIF;
+                this.parseBoxes(buffer, 0, length);
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            // The head ends before the field, keep what was read so far
+        }
+    }
+
+    private void parseJpeg(ByteBuffer buffer) {
+        int position = 2;
+        while (position + 4 <= buffer.limit()) {
+            if (u8(buffer, position) != 0xFF) {
+                return;
+            }
+            int marker = u8(buffer, position + 1);
+            if (marker == 0xFF) {
+                // Fill byte
+                position++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {
+                // Markers without a payload
+                position += 2;
+                continue;
+            }
+            if (marker == 0xD9 || marker == 0xDA) {
+                return;
+            }
+            int segmentLength = u16(buffer, position + 2);
+            int segment = position + 4;
+            if (marker == 0xE1 && segmentLength > 8 && "Exif".equals(fourcc(buffer, segment))) {
+                this.parseExif(buffer, segment + 6, Math.min(position + 2 + segmentLength, buffer.limit()));
+            } else if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                // Start of frame, the EXIF segment always comes before it
+                this.height = u16(buffer, segment + 1);
+                this.width = u16(buffer, segment + 3);
+                if (this.orientation == ExifInterface.ORIENTATION_UNDEFINED) {
+                    this.orientation = ExifInterface.ORIENTATION_NORMAL;
+                }
+                return;
+            }
+            position += 2 + segmentLength;
+        }
+    }
+
+    /**
+     * Reads the orientation and capture date of a TIFF structure from start to end.
+     */
+    private void parseExif(ByteBuffer buffer, int start, int end) {
+        ByteBuffer tiff = ((ByteBuffer) buffer.duplicate().position(start).limit(end)).slice();
+        String byteOrder = new String(new byte[] {tiff.get(0), tiff.get(1)}, StandardCharsets.US_ASCII);
+        tiff.order("II".equals(byteOrder) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        if (tiff.getShort(2) != 42) {
+            return;
+        }
+        this.orientation = ExifInterface.ORIENTATION_NORMAL;
+        int exifIfd = this.parseIfd(tiff, tiff.getInt(4));
+        if (exifIfd > 0) {
+            this.parseIfd(tiff, exifIfd);
+        }
+    }
+
+    /**
+     * Reads the tags of an IFD and returns the offset of the EXIF IFD it points to, or 0.
+     */
+    private int parseIfd(ByteBuffer tiff, int offset) {
+        int exifIfd = 0;
+        int count = tiff.getShort(offset) & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            int entry = offset + 2 + i * 12;
+            int tag = tiff.getShort(entry) & 0xFFFF;
+            if (tag == TAG_ORIENTATION) {
+                int orientation = tiff.getShort(entry + 8) & 0xFFFF;
+                if (orientation >= ExifInterface.ORIENTATION_NORMAL && orientation <= ExifInterface.ORIENTATION_ROTATE_270) {
+                    this.orientation = orientation;
+                }
+            } else if (tag == TAG_EXIF_IFD) {
+                exifIfd = tiff.getInt(entry + 8);
+            } else if (tag == TAG_DATE_TIME_ORIGINAL || (tag == TAG_DATE_TIME && this.captureDate == null)) {
+                String date = toIsoDate(tiff, tiff.getInt(entry + 8));
+                if (date != null) {
+                    this.captureDate = date;
+                }
+            }
+        }
+        return exifIfd;
+    }
+
+    private void parseWebp(ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        String chunk = fourcc(buffer, 12);
+        if ("VP8 ".equals(chunk)) {
+            this.width = buffer.getShort(26) & 0x3FFF;
+            this.height = buffer.getShort(28) & 0x3FFF;
+            this.orientation = ExifInterface.ORIENTATION_NORMAL;
+        } else if ("VP8L".equals(chunk)) {
+            int bits = buffer.getInt(21);
+            this.width = (bits & 0x3FFF) + 1;
+            this.height = ((bits >> 14) & 0x3FFF) + 1;
+            this.orientation = ExifInterface.ORIENTATION_NORMAL;
+        } else if ("VP8X".equals(chunk)) {
+            this.width = u24(buffer, 24) + 1;
+            this.height = u24(buffer, 27) + 1;
+            // The EXIF chunk follows the image data, far past the head
+            if ((u8(buffer, 20) & 0x08) == 0) {
+                this.orientation = ExifInterface.ORIENTATION_NORMAL;
+            }
+        }
+    }
+
+    /**
+     * Walks the ISO BMFF boxes from start to end, down to the item properties of the meta box.
+     */
+    private void parseBoxes(ByteBuffer buffer, int start, int end) {
+        int position = start;
+        while (position + 8 <= end) {
+            long size = buffer.getInt(position) & 0xFFFFFFFFL;
+            String type = fourcc(buffer, position + 4);
+            int header = 8;
+            if (size == 1) {
+                size = buffer.getLong(position + 8);
+                header = 16;
+            } else if (size == 0) {
+                size = end - position;
+            }
+            if (size < header) {
+                return;
+            }
+            int boxEnd = (int) Math.min(end, position + size);
+            int content = position + header;
+            if ("meta".equals(type)) {
+                // Full box, skip its version and flags
+                this.parseBoxes(buffer, content + 4, boxEnd);
+            } else if ("iprp".equals(type) || "ipco".equals(type)) {
+                this.parseBoxes(buffer, content, boxEnd);
+            } else if ("ispe".equals(type)) {
+                int width = buffer.getInt(content + 4);
+                int height = buffer.getInt(content + 8);
+                // Thumbnails and grid tiles have their own ispe, the primary image is the largest
+                if ((long) width * height > (long) Math.max(0, this.width) * Math.max(0, this.height)) {
+                    this.width = width;
+                    this.height = height;
+                }
+            } else if ("irot".equals(type)) {
+                // Counter clockwise, in quarter turns
+                this.rotation = (360 - (u8(buffer, content) & 0x3) * 90) % 360;
+            } else if ("mdat".equals(type)) {
+                return;
+            }
+            position = (int) Math.min(Integer.MAX_VALUE, position + size);
+        }
+    }
+
+    private static String toIsoDate(ByteBuffer tiff, int offset) {
+        byte[] bytes = new byte[19];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = tiff.get(offset + i);
+        }
+        String date = new String(bytes, StandardCharsets.US_ASCII);
+        // yyyy:MM:dd HH:mm:ss, blank or zeroed when the camera clock was not set
+        if (date.charAt(4) != ':' || date.charAt(10) != ' ' || date.startsWith("0000")) {
+            return null;
+        }
+        return date.substring(0, 4) + "-" + date.substring(5, 7) + "-" + date.substring(8, 10) + "T" + date.substring(11);
+    }
+
+    private static String fourcc(ByteBuffer buffer, int offset) {
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static int u8(ByteBuffer buffer, int offset) {
+        return buffer.get(offset) & 0xFF;
+    }
+
+    private static int u16(ByteBuffer buffer, int offset) {
+        return (u8(buffer, offset) << 8) | u8(buffer, offset + 1);
+    }
+
+    private static int u24(ByteBuffer buffer, int offset) {
+        return u8(buffer, offset) | (u8(buffer, offset + 1) << 8) | (u8(buffer, offset + 2) << 16);
+    }
+}
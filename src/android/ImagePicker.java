@@ -4,30 +4,16 @@ import android.Manifest;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.ClipData;
-import android.content.Context;
+import android.content.ContentResolver;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.media.MediaMetadataRetriever;
-import android.media.ThumbnailUtils;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 import android.os.ext.SdkExtensions;
 import android.provider.MediaStore;
-import android.provider.OpenableColumns;
 import android.util.Log;
-import android.util.Size;
-import android.view.Gravity;
-import android.view.ViewGroup;
-import android.view.WindowManager;
-import android.webkit.MimeTypeMap;
-import android.widget.LinearLayout;
-import android.widget.ProgressBar;
 import android.widget.Toast;
 
 import androidx.activity.result.PickVisualMediaRequest;
@@ -42,44 +28,205 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class ImagePicker extends CordovaPlugin {
     private static final String ACTION_GET_PICTURES = "getPictures";
     private static final String ACTION_HAS_READ_PERMISSION = "hasReadPermission";
     private static final String ACTION_REQUEST_READ_PERMISSION = "requestReadPermission";
+    private static final String ACTION_READ_FILE = "readFile";
+    private static final String ACTION_CLEAR_CACHE = "clearCache";
+    private static final String ACTION_GET_CACHE_STATS = "getCacheStats";
+    private static final String ACTION_GET_METRICS = "getMetrics";
+    private static final String ACTION_CANCEL_IMPORT = "cancelImport";
+    private static final String ACTION_CLOSE_IMAGE_PICKER = "closeImagePicker";
+    private static final String ACTION_RESUME_IMPORT = "resumeImport";
+    private static final String ACTION_GET_THUMBNAIL = "getThumbnail";
 
     private static final int PERMISSION_REQUEST_CODE = 100;
     private static final int SELECT_PICTURE = 200;
 
     private static final String FILE_ACCESS_ERROR = "Cannot access file. (-1)";
+    private static final String INVALID_RANGE_ERROR = "Invalid range: offset and length cannot be negative";
+    private static final String IMPORT_CANCELLED_ERROR = "Import cancelled";
+    private static final String JOB_NOT_FOUND_ERROR = "No import to resume";
+    private static final String UPLOAD_ERROR = "Upload failed";
+
+    // Upper bound of a single readFile call, JS reads larger files range by range
+    private static final int MAX_READ_LENGTH = 8 * 1024 * 1024;
+
+    private static final int OUTPUT_TYPE_BASE64_STRING = 1;
+    private static final String BASE64_MODE_FILE = "file";
+
+    private static final String CACHE_DIRECTORY = "imagepicker_cache";
+    private static final String JOBS_DIRECTORY = "imagepicker_jobs";
+    private static final String SESSIONS_DIRECTORY = "imagepicker_sessions";
+    // config.xml preference, in days, 0 keeps the imported files until the app deletes them
+    private static final String PREFERENCE_SESSION_MAX_AGE = "ImagePickerSessionMaxAge";
+    private static final String STATE_JOB_ID = "jobId";
+
+    private static final int DEFAULT_PARALLELISM = 4;
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 30L;
 
     private CallbackContext callbackContext;
     private int maxImageCount;
     private int maxPhotoSize;
     private int maxVideoSize;
-    private LinearLayout layout = null;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private boolean streamResults;
+    private boolean copyFiles = true;
+    private boolean reportProgress;
+    private MediaCopier copier;
+    private ImageResizer resizer;
+    private VideoThumbnailer thumbnailer;
+    private ItemImporter importer;
+    private int outputType;
+    private String base64Mode;
+    private int maxBase64Size;
+    private boolean useCache;
+    private ImportCache cache;
+    private OutputLayout layout;
+    private ThumbnailService thumbnails;
+    // Set by the upload option, items are then streamed to it instead of being copied
+    private ChunkedUploader uploader;
+    private boolean collectMetrics;
+    // Set by the JS wrapper, which understands the keep-alive event protocol
+    private boolean useEvents;
+    private String progressMode = ImportProgress.MODE_BLOCKING;
+    private volatile JSONObject lastMetrics;
+    private volatile ImportJob currentJob;
+    // Content uris returned by the zero-copy imports of this process, readable with readFile
+    private final Set<String> returnedUris = Collections.synchronizedSet(new HashSet<>());
+    // Job running when the activity state was saved, resumed by default by resumeImport
+    private String restoredJobId;
+    private static volatile ImportMetrics.Listener metricsListener;
+
+    // Runs the per-pick coordination (ordering, callbacks), while the items themselves
+    // are imported on the bounded worker pool. Both are torn down in onDestroy.
+    private ExecutorService importExecutor;
+    private ThreadPoolExecutor workerPool;
+
+    /**
+     * Registers a listener receiving the metrics of every getPictures call made with the
+     * collectMetrics option, for apps that forward them to their own telemetry.
+     */
+    public static void setMetricsListener(ImportMetrics.Listener listener) {
+        metricsListener = listener;
+    }
+
+    @Override
+    protected void pluginInitialize() {
+        this.copier = new MediaCopier(cordova.getActivity().getContentResolver());
+        this.cache = new ImportCache(new File(cordova.getContext().getFilesDir(), CACHE_DIRECTORY));
+        this.thumbnails = new ThumbnailService(cordova.getContext());
+        this.layout = new OutputLayout(new File(cordova.getContext().getFilesDir(), SESSIONS_DIRECTORY));
+        // In days, 0 keeps every session
+        final int sessionMaxAgeDays = preferences.getInteger(PREFERENCE_SESSION_MAX_AGE, -1);
+        final long sessionMaxAge = sessionMaxAgeDays >= 0 ? sessionMaxAgeDays * 24L * 60 * 60 * 1000 : OutputLayout.DEFAULT_MAX_AGE;
+        cordova.getThreadPool().execute(() -> {
+            ImportJob.prune(this.getJobsDirectory(), cordova.getActivity().getContentResolver());
+            this.layout.prune(sessionMaxAge);
+        });
+    }
 
     public boolean execute(String action, final JSONArray args, final CallbackContext callbackContext) throws JSONException {
-        this.callbackContext = callbackContext;
         if (ACTION_HAS_READ_PERMISSION.equals(action)) {
             callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, hasReadPermission()));
             return true;
         } else if (ACTION_REQUEST_READ_PERMISSION.equals(action)) {
+            this.callbackContext = callbackContext;
             requestReadPermission();
             return true;
+        } else if (ACTION_READ_FILE.equals(action)) {
+            // Uses its own callback so that reads can run while a pick is being imported
+            final Uri uri = Uri.parse(args.getString(0));
+            final long offset = args.optLong(1, 0);
+            final int length = Math.min(args.optInt(2, MAX_READ_LENGTH), MAX_READ_LENGTH);
+            if (offset < 0 || length < 0) {
+                callbackContext.error(INVALID_RANGE_ERROR);
+                return true;
+            }
+            cordova.getThreadPool().execute(() -> this.readFile(uri, offset, length, callbackContext));
+            return true;
+        } else if (ACTION_GET_THUMBNAIL.equals(action)) {
+            // Uses its own callback too, previews are asked for while the app scrolls its grid
+            String path = args.getString(0);
+            int maxEdge = args.optInt(1, VideoThumbnailer.DEFAULT_MAX_EDGE);
+            String format = args.isNull(2) ? "jpeg" : args.getString(2);
+            this.thumbnails.request(path, maxEdge, format, new ThumbnailService.Callback() {
+                @Override
+                public void onThumbnail(String dataUrl) {
+                    callbackContext.success(dataUrl);
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    callbackContext.error(e instanceof SecurityException || e instanceof FileNotFoundException ? FILE_ACCESS_ERROR : "Unexpected error: " + e);
+                }
+            });
+            return true;
+        } else if (ACTION_CLEAR_CACHE.equals(action)) {
+            cordova.getThreadPool().execute(() -> {
+                this.cache.clear();
+                this.thumbnails.clear();
+                callbackContext.success();
+            });
+            return true;
+        } else if (ACTION_GET_CACHE_STATS.equals(action)) {
+            cordova.getThreadPool().execute(() -> {
+                try {
+                    callbackContext.success(this.cache.getStats());
+                } catch (JSONException e) {
+                    callbackContext.error("Unexpected error: " + e);
+                }
+            });
+            return true;
+        } else if (ACTION_GET_METRICS.equals(action)) {
+            // null until a getPictures call made with collectMetrics completes
+            callbackContext.sendPluginResult(this.lastMetrics != null
+                ? new PluginResult(PluginResult.Status.OK, this.lastMetrics)
+                : new PluginResult(PluginResult.Status.OK, (String) null));
+            return true;
+        } else if (ACTION_CANCEL_IMPORT.equals(action) || ACTION_CLOSE_IMAGE_PICKER.equals(action)) {
+            // closeImagePicker takes no job id and cancels whatever is running
+            String jobId = args.isNull(0) ? null : args.getString(0);
+            ImportJob job = this.currentJob;
+            boolean cancelled = job != null && (jobId == null || job.id.equals(jobId));
+            if (cancelled) {
+                job.cancel();
+            }
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, cancelled));
+            return true;
+        } else if (ACTION_RESUME_IMPORT.equals(action)) {
+            this.callbackContext = callbackContext;
+            String jobId = args.isNull(0) ? this.restoredJobId : args.getString(0);
+            this.readOptions(args.isNull(1) ? new JSONObject() : args.getJSONObject(1));
+            this.runImport(jobId, null);
+            return true;
         } else if (ACTION_GET_PICTURES.equals(action)) {
+            this.callbackContext = callbackContext;
             final JSONObject params = args.getJSONObject(0);
-            this.maxImageCount = params.has("maximumImagesCount") ? params.getInt("maximumImagesCount") : 20;
-            this.maxPhotoSize = params.has("maxPhotoSize") ? params.getInt("maxPhotoSize") : 15;
-            this.maxVideoSize = params.has("maxVideoSize") ? params.getInt("maxVideoSize") : 5;
+            this.readOptions(params);
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R && SdkExtensions.getExtensionVersion(Build.VERSION_CODES.R) >= 2) {
                 int deviceMaxLimit = MediaStore.getPickImagesMaxLimit();
                if (this.maxImageCount > deviceMaxLimit) {
@@ -102,6 +249,8 @@ public class ImagePicker extends CordovaPlugin {
                 imagePickerIntent.setDataAndType(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, "*/*");
                 imagePickerIntent.putExtra(Intent.EXTRA_MIME_TYPES, mimeTypes.toArray(new String[0]));
                 imagePickerIntent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+                // Persistable, so that a job resumed by a later process can still read the items
+                imagePickerIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION);
             } else {
                 PickVisualMediaRequest pickVisualMediaRequest = new PickVisualMediaRequest.Builder().setMediaType(allowVideo ? ActivityResultContracts.PickVisualMedia.ImageAndVideo.INSTANCE : ActivityResultContracts.PickVisualMedia.ImageOnly.INSTANCE).build();
                 imagePickerIntent = new ActivityResultContracts.PickMultipleVisualMedia(maxImageCount).createIntent(cordova.getContext(), pickVisualMediaRequest);
@@ -115,141 +264,582 @@ public class ImagePicker extends CordovaPlugin {
         return false;
     }
 
+    /**
+     * Reads the import options shared by getPictures and resumeImport.
+     */
+    private void readOptions(JSONObject params) throws JSONException {
+        this.maxImageCount = params.has("maximumImagesCount") ? params.getInt("maximumImagesCount") : 20;
+        this.maxPhotoSize = params.has("maxPhotoSize") ? params.getInt("maxPhotoSize") : 15;
+        this.maxVideoSize = params.has("maxVideoSize") ? params.getInt("maxVideoSize") : 5;
+        this.parallelism = params.has("parallelism") ? Math.max(1, params.getInt("parallelism")) : DEFAULT_PARALLELISM;
+        this.streamResults = params.has("streamResults") && params.getBoolean("streamResults");
+        this.copyFiles = !params.has("copyFiles") || params.getBoolean("copyFiles");
+        this.reportProgress = params.has("reportProgress") && params.getBoolean("reportProgress");
+        this.thumbnailer = new VideoThumbnailer(cordova.getContext(),
+            params.has("thumbnailMaxEdge") ? params.getInt("thumbnailMaxEdge") : VideoThumbnailer.DEFAULT_MAX_EDGE,
+            params.has("thumbnailFormat") ? params.getString("thumbnailFormat") : "jpeg",
+            params.has("thumbnailQuality") ? params.getInt("thumbnailQuality") : 80
+        );
+        this.outputType = params.has("outputType") ? params.getInt("outputType") : 0;
+        this.base64Mode = params.has("base64Mode") ? params.getString("base64Mode") : "chunks";
+        this.maxBase64Size = params.has("maxBase64Size") ? params.getInt("maxBase64Size") : 10;
+        this.useCache = params.has("useCache") && params.getBoolean("useCache");
+        this.collectMetrics = params.has("collectMetrics") && params.getBoolean("collectMetrics");
+        this.useEvents = params.has("useEvents") && params.getBoolean("useEvents");
+        this.progressMode = params.has("progressMode") ? params.getString("progressMode") : ImportProgress.MODE_BLOCKING;
+        this.cache.configure(
+            params.has("maxCacheSize") ? params.getLong("maxCacheSize") * 1024 * 1024 : ImportCache.DEFAULT_MAX_BYTES,
+            params.has("maxCacheAge") ? params.getLong("maxCacheAge") * 24 * 60 * 60 * 1000 : ImportCache.DEFAULT_MAX_AGE
+        );
+        this.resizer = new ImageResizer(
+            params.has("width") ? params.getInt("width") : 0,
+            params.has("height") ? params.getInt("height") : 0,
+            params.has("quality") ? params.getInt("quality") : 100,
+            params.has("format") ? params.getString("format") : "jpeg"
+        );
+        if (this.uploader != null && this.currentJob == null) {
+            this.uploader.shutdown();
+        }
+        this.uploader = params.has("upload") && !params.isNull("upload")
+            ? new ChunkedUploader(cordova.getActivity().getContentResolver(), params.getJSONObject("upload"))
+            : null;
+        this.importer = new ItemImporter(cordova.getActivity().getContentResolver(), this.copier, this.resizer, this.thumbnailer,
+            params.has("lazyThumbnails") && params.getBoolean("lazyThumbnails"));
+    }
+
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        ArrayList<JSONObject> imageInfos = new ArrayList<>();
-        executor.execute(() -> {
-            boolean sizeLimitExceeded = false;
+        if (requestCode == SELECT_PICTURE && resultCode == Activity.RESULT_OK && data != null) {
+            this.runImport(null, this.getSelectedUris(data));
+        } else if (resultCode == Activity.RESULT_CANCELED && data != null) {
+            String error = data.getStringExtra("ERRORMESSAGE");
+            callbackContext.error("Error: " + error);
+        } else if (resultCode == Activity.RESULT_CANCELED) {
+            JSONArray res = new JSONArray();
+            callbackContext.success(res);
+        } else {
+            callbackContext.error("No images selected");
+        }
+    }
+
+    /**
+     * Runs an import job on the coordinator thread. A new job is created for uris when jobId
+     * is null, otherwise the job is loaded from its manifest and only the items it has not
+     * completed yet are imported, the others are returned as they were recorded.
+     */
+    private void runImport(final String jobId, final List<Uri> uris) {
+        final ChunkedUploader uploader = this.uploader;
+        final int parallelism = uploader != null ? uploader.concurrency : this.parallelism;
+        final boolean streamResults = this.streamResults;
+        final boolean copyFiles = this.copyFiles;
+        final boolean reportProgress = this.reportProgress;
+        final boolean base64Output = this.outputType == OUTPUT_TYPE_BASE64_STRING && uploader == null;
+        final boolean base64File = BASE64_MODE_FILE.equals(this.base64Mode);
+        final int maxBase64Size = this.maxBase64Size;
+        final boolean base64Chunks = this.outputType == OUTPUT_TYPE_BASE64_STRING && !base64File;
+        final boolean useEvents = this.useEvents || streamResults || reportProgress || base64Chunks || this.collectMetrics;
+        final boolean useCache = this.useCache && copyFiles && uploader == null;
+        final int maxImageCount = this.maxImageCount;
+        final int maxPhotoSize = this.maxPhotoSize;
+        final int maxVideoSize = this.maxVideoSize;
+        final ItemImporter importer = this.importer;
+        final String cacheSettings = importer.getSettings();
+        final ImportProgress progress = new ImportProgress(cordova.getActivity(), this.progressMode);
+        // Metrics travel with the complete event, next to the results
+        final ImportMetrics metrics = this.collectMetrics ? new ImportMetrics() : null;
+        // The field is replaced by the next call, this job keeps answering the call that started it
+        final CallbackContext callbackContext = this.callbackContext;
+        getImportExecutor().execute(() -> {
+            List<Future<JSONObject>> imports = new ArrayList<>();
+            ImportJob job = null;
             try {
-                cordova.getActivity().runOnUiThread(() -> {
-                    showLoader();
-                });
-                
-                Uri uri;
-                String path;
-                if (resultCode == Activity.RESULT_OK && data != null) {
-                    ArrayList<String> fileURIs = new ArrayList<>();
-                    boolean isVideo = false;
-                    int maxFileSize = this.maxPhotoSize;
-                    if (requestCode == SELECT_PICTURE) {
-                        if (data.getData() != null) {
-                            uri = data.getData();
-                            isVideo = this.isVideo(uri);
-                            if (isVideo) {
-                                maxFileSize = this.maxVideoSize;
-                            }
-                            double size = this.getFileSizeFromUri(uri);
-                            if (size > maxFileSize) {
-                                sizeLimitExceeded = true;
-                            } else {
-                                path = ImagePicker.this.copyFileToInternalStorage(uri, "");
-                                if (path.equals("-1")) {
-                                    callbackContext.error(FILE_ACCESS_ERROR);
-                                    return;
-                                }
-                                fileURIs.add(path);
+                progress.show();
+
+                job = jobId == null
+                    ? ImportJob.create(this.getJobsDirectory(), uris)
+                    : ImportJob.load(this.getJobsDirectory(), jobId);
+                if (job == null) {
+                    callbackContext.error(JOB_NOT_FOUND_ERROR);
+                    return;
+                }
+                if (jobId == null) {
+                    // One IPC per uri, kept off the import so that the first items start right away
+                    final ImportJob createdJob = job;
+                    cordova.getThreadPool().execute(() -> createdJob.persistPermissions(cordova.getActivity().getContentResolver()));
+                }
+                this.currentJob = job;
+                if (useEvents) {
+                    this.sendJobEvent(job.id, callbackContext);
+                }
+
+                // A planned job ran before, the server may hold part of its uploads
+                final boolean resumed = job.isPlanned();
+                JSONArray res = new JSONArray();
+                boolean sizeLimitExceeded = false;
+                ThreadPoolExecutor pool = getWorkerPool(parallelism);
+                long metadataStart = System.nanoTime();
+                Map<Integer, MediaItemMetadata> items = new HashMap<>();
+                if (!job.isPlanned()) {
+                    ImportPlan plan = ImportPlan.create(cordova.getContext(), job.uris,
+                        maxImageCount, maxPhotoSize, maxVideoSize);
+                    job.plan(plan);
+                    sizeLimitExceeded = plan.hasSizeRejections();
+                    // Every accepted item of a fresh job is pending, the plan already resolved them
+                    for (ImportPlan.Entry entry : plan.accepted) {
+                        items.put(entry.index, entry.metadata);
+                    }
+                } else {
+                    items = this.resolvePending(job);
+                }
+                long totalBytes = 0;
+                for (MediaItemMetadata metadata : items.values()) {
+                    totalBytes += Math.max(0, metadata.size);
+                }
+                List<Integer> accepted = job.getAccepted();
+                if (metrics != null) {
+                    metrics.metadataResolved(metadataStart, accepted.size());
+                }
+                // The same content picked twice is imported once, the copy reuses its result.
+                // Contents are only compared when they are copied, hashing an upload would read it twice
+                long duplicatesStart = System.nanoTime();
+                Map<Integer, Integer> duplicates = OutputLayout.findDuplicates(cordova.getActivity().getContentResolver(), items, copyFiles && uploader == null);
+                if (metrics != null) {
+                    metrics.duplicatesFound(duplicatesStart);
+                }
+                final OutputLayout.Directory sessionDirectory = this.layout.getSessionDirectory(job.id);
+                progress.setTotals(accepted.size(), totalBytes);
+                final ImportJob importJob = job;
+                Map<Integer, Future<JSONObject>> futures = new HashMap<>();
+                for (int i = 0; i < accepted.size(); i++) {
+                    final int index = accepted.get(i);
+                    final MediaItemMetadata metadata = items.get(index);
+                    final Integer originalIndex = duplicates.get(index);
+                    // Submitted before this one, so it never waits behind it in the queue
+                    final Future<JSONObject> original = originalIndex != null ? futures.get(originalIndex) : null;
+                    final ImportMetrics.Item itemMetrics = metrics != null ? metrics.item(i) : null;
+                    if (itemMetrics != null) {
+                        itemMetrics.setIndex(index);
+                    }
+                    final ImportProgress.Item itemProgress = progress.item(metadata != null ? metadata.size : 0);
+                    final MediaCopier.ProgressListener listener = (bytesCopied, size) -> {
+                        long bytesDone = itemProgress.update(bytesCopied);
+                        if (reportProgress) {
+                            this.sendProgressEvent(index, bytesCopied, size, bytesDone, progress, callbackContext);
+                        }
+                    };
+                    Future<JSONObject> future = pool.submit(() -> {
+                        JSONObject json = importJob.getResult(index);
+                        if (json == null && original != null) {
+                            original.get();
+                            json = importJob.getResult(originalIndex);
+                            json.put("duplicateOf", originalIndex);
+                            importJob.complete(index, json);
+                        }
+                        if (json == null) {
+                            String cacheKey = useCache ? ImportCache.getKey(metadata, cacheSettings) : null;
+                            json = cacheKey != null ? this.cache.get(cacheKey) : null;
+                            if (json != null && itemMetrics != null) {
+                                itemMetrics.setCached(true);
                             }
-                        } else {
-                            ClipData clip = data.getClipData();
-                            for (int i = 0; i < clip.getItemCount(); i++) {
-                                uri = clip.getItemAt(i).getUri();
-                                isVideo = this.isVideo(uri);
-                                if (isVideo) {
-                                    maxFileSize = this.maxVideoSize;
-                                }
-                                double size = this.getFileSizeFromUri(uri);
-                                if (size > maxFileSize) {
-                                    sizeLimitExceeded = true;
-                                    if (i + 1 >= ImagePicker.this.maxImageCount) {
-                                        break;
+                            if (json == null) {
+                                // Null while another job writes the same entry, the item is then imported uncached
+                                File entryDirectory = cacheKey != null ? this.cache.getEntryDirectory(cacheKey) : null;
+                                OutputLayout.Directory directory = entryDirectory != null ? new OutputLayout.Directory(entryDirectory) : sessionDirectory;
+                                try {
+                                    if (uploader != null) {
+                                        // The id stays the same when the job is resumed
+                                        json = importer.uploadItem(metadata, uploader, importJob.id + "-" + index, resumed, directory, listener, itemMetrics);
+                                    } else if (copyFiles) {
+                                        json = importer.importItem(metadata, directory, listener, itemMetrics);
+                                    } else {
+                                        json = importer.referenceItem(metadata, directory, itemMetrics);
+                                    }
+                                    if (entryDirectory != null) {
+                                        this.cache.put(cacheKey, json);
+                                    }
+                                } finally {
+                                    if (entryDirectory != null) {
+                                        this.cache.release(cacheKey);
                                     }
-                                    continue;
-                                }
-
-                                path = ImagePicker.this.copyFileToInternalStorage(uri, "");
-                                if (path.equals("-1")) {
-                                    callbackContext.error(FILE_ACCESS_ERROR);
-                                    return;
-                                }
-                                fileURIs.add(path);
-                                if (i + 1 >= ImagePicker.this.maxImageCount) {
-                                    break;
                                 }
                             }
+                            importJob.complete(index, json);
                         }
-                    }
-                    for (int i=0; i < fileURIs.size(); i++) {
-                        String fileUri = fileURIs.get(i);
-                        isVideo = this.isVideo(fileUri);
-                        BitmapFactory.Options options = new BitmapFactory.Options();
-                        options.inJustDecodeBounds = true;
-                        Uri ImageUri = Uri.parse(fileUri);
-                        BitmapFactory.decodeFile(new File(ImageUri.getPath()).getAbsolutePath(), options);
-                        JSONObject json = new JSONObject();
-                        json.put("path", fileUri);
-                        json.put("isVideo", isVideo);
-                        json.put("width", options.outWidth);
-                        json.put("height", options.outHeight);
-                        if (isVideo) {
-                            File videoFile = new File(fileUri);
-                            String videoThumbnail = this.generateVideoThumbnail(videoFile);
-                            json.put("thumbnail", videoThumbnail);
+                        if (base64Output) {
+                            long base64Start = ImportMetrics.start(itemMetrics);
+                            this.encodeBase64(index, json, sessionDirectory, base64File, maxBase64Size, callbackContext);
+                            ImportMetrics.stop(itemMetrics, ImportMetrics.BASE64, base64Start);
                         }
-                        imageInfos.add(json);
-                    }
-                    JSONArray res = new JSONArray(imageInfos);
-                    if (sizeLimitExceeded) {
-                        this.showMaxFileSizeExceededWarning();
-                    }
-                    callbackContext.success(res);
-                } else if (resultCode == Activity.RESULT_CANCELED && data != null) {
-                    String error = data.getStringExtra("ERRORMESSAGE");
-                    callbackContext.error("Error: " + error);
-                } else if (resultCode == Activity.RESULT_CANCELED) {
-                    JSONArray res = new JSONArray();
+                        if (!copyFiles && uploader == null) {
+                            this.returnedUris.add(json.optString("path"));
+                        }
+                        if (streamResults) {
+                            this.sendItemEvent(index, json, callbackContext);
+                        }
+                        itemProgress.done();
+                        if (reportProgress) {
+                            // Also covers the items which copied nothing: resized, cached or resumed
+                            long size = Math.max(0, metadata != null ? metadata.size : 0);
+                            this.sendProgressEvent(index, size, size, progress.getBytesDone(), progress, callbackContext);
+                        }
+                        return json;
+                    });
+                    imports.add(future);
+                    futures.put(index, future);
+                    job.track(future);
+                }
+                // Futures are drained in submission order so the result keeps the selection order
+                for (Future<JSONObject> item : imports) {
+                    res.put(item.get());
+                }
+                job.finish(ImportJob.STATE_COMPLETE);
+                if (copyFiles || uploader != null) {
+                    job.releasePermissions(cordova.getActivity().getContentResolver());
+                } else {
+                    // Zero-copy results keep pointing at the picked uris
+                    job.keepPermissions();
+                }
+                if (useCache) {
+                    this.cache.trim();
+                }
+                if (sizeLimitExceeded) {
+                    this.showMaxFileSizeExceededWarning();
+                }
+                JSONObject metricsJson = metrics != null ? this.publishMetrics(metrics) : null;
+                if (useEvents) {
+                    this.sendCompleteEvent(job.id, res, job.getRejected(), metricsJson, callbackContext);
+                } else {
                     callbackContext.success(res);
+                }
+            } catch (CancellationException e) {
+                cancelImports(imports);
+                job.finish(ImportJob.STATE_CANCELLED);
+                callbackContext.error(IMPORT_CANCELLED_ERROR);
+            } catch (ExecutionException e) {
+                cancelImports(imports);
+                job.finish(ImportJob.STATE_FAILED);
+                if (e.getCause() instanceof SecurityException) {
+                    Log.d("ImagePicker", "runImport: " + e.getCause().getMessage());
+                    cordova.getActivity().runOnUiThread(() -> (Toast.makeText(cordova.getContext(), FILE_ACCESS_ERROR, Toast.LENGTH_LONG)).show());
+                    callbackContext.error(FILE_ACCESS_ERROR);
+                } else if (e.getCause() instanceof IOException && uploader != null) {
+                    Log.e("ImagePicker", "runImport: " + e.getCause().getMessage());
+                    callbackContext.error(UPLOAD_ERROR + ": " + e.getCause().getMessage());
+                } else if (e.getCause() instanceof IOException) {
+                    Log.e("ImagePicker", "runImport: " + e.getCause().getMessage());
+                    callbackContext.error(FILE_ACCESS_ERROR);
                 } else {
-                    callbackContext.error("No images selected");
+                    callbackContext.error("Unexpected error: " + e.getCause());
                 }
-                
-                cordova.getActivity().runOnUiThread(() -> {
-                    hideLoader();
-                });
             } catch (Exception e) {
+                cancelImports(imports);
+                if (job != null) {
+                    job.finish(ImportJob.STATE_FAILED);
+                }
                 callbackContext.error("Unexpected error: " + e);
+            } finally {
+                // Every exit path gives input back, errors and cancellations included
+                progress.hide();
+                if (this.currentJob == job) {
+                    this.currentJob = null;
+                }
             }
         });
     }
 
-    private void showLoader() {
-        Context context = cordova.getActivity().getApplicationContext();
-        this.layout = new LinearLayout(context);
-        this.layout.setGravity(Gravity.CENTER);
-        this.layout.setLayoutParams(new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, WindowManager.LayoutParams.MATCH_PARENT));
-        this.layout.setBackgroundColor(Color.parseColor("#A6000000"));
-        LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
-            LinearLayout.LayoutParams.MATCH_PARENT,
-            LinearLayout.LayoutParams.MATCH_PARENT
-        );
-        cordova.getActivity().addContentView(layout, params);
-        cordova.getActivity().getWindow().setFlags(
-            WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE,
-            WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE
-        );
-        ProgressBar loader = new ProgressBar(context);
-        this.layout.addView(loader);
+    /**
+     * Resolves the metadata of the items a resumed job still has to import, completed ones
+     * come from the manifest. Items which can no longer be read, their permission gone with
+     * the process which picked them, are rejected instead of failing the job.
+     */
+    private Map<Integer, MediaItemMetadata> resolvePending(ImportJob job) throws JSONException {
+        ContentResolver resolver = cordova.getActivity().getContentResolver();
+        List<Integer> indexes = new ArrayList<>();
+        List<Uri> uris = new ArrayList<>();
+        for (Map.Entry<Integer, Uri> item : job.getPending().entrySet()) {
+            if (ImportPlan.isReadable(resolver, item.getValue())) {
+                indexes.add(item.getKey());
+                uris.add(item.getValue());
+            } else {
+                job.reject(item.getKey(), ImportPlan.REASON_UNREADABLE);
+            }
+        }
+        List<MediaItemMetadata> resolved = MediaItemMetadata.resolve(cordova.getContext(), uris);
+        Map<Integer, MediaItemMetadata> items = new HashMap<>();
+        for (int i = 0; i < indexes.size(); i++) {
+            items.put(indexes.get(i), resolved.get(i));
+        }
+        return items;
+    }
+
+    /**
+     * Returns every picked uri in selection order, the count cap is applied by ImportPlan.
+     */
+    private List<Uri> getSelectedUris(Intent data) {
+        List<Uri> uris = new ArrayList<>();
+        if (data.getData() != null) {
+            uris.add(data.getData());
+        } else if (data.getClipData() != null) {
+            ClipData clip = data.getClipData();
+            for (int i = 0; i < clip.getItemCount(); i++) {
+                uris.add(clip.getItemAt(i).getUri());
+            }
+        }
+        return uris;
+    }
+
+    /**
+     * BASE64_STRING output: encodes the imported item in fixed size chunks, either sent to JS
+     * as keep-alive events or, when toFile is set, written to a sidecar file in the session
+     * directory. Items above maxBase64Size (MB) stay FILE_URI results and are flagged with
+     * base64Fallback. Both come from the call that started the job, not the latest one.
+     */
+    private void encodeBase64(int index, JSONObject json, OutputLayout.Directory directory, boolean toFile, int maxBase64Size, CallbackContext callbackContext) throws JSONException, IOException {
+        String path = json.getString("path");
+        boolean isContentUri = path.startsWith(ContentResolver.SCHEME_CONTENT + ":");
+        long size = isContentUri ? json.optLong("size", -1) : new File(path).length();
+        if (size / (1024.0 * 1024.0) > maxBase64Size) {
+            json.put("base64Fallback", true);
+            return;
+        }
+
+        try (InputStream input = isContentUri
+                ? cordova.getActivity().getContentResolver().openInputStream(Uri.parse(path))
+                : new FileInputStream(path)) {
+            if (input == null) {
+                throw new FileNotFoundException("No content for " + path);
+            }
+            if (toFile) {
+                String name = isContentUri ? json.optString("name", String.valueOf(path.hashCode())) : new File(path).getName();
+                File sidecar = directory.reserve(name + ".b64");
+                Base64Streamer.writeSidecar(input, sidecar);
+                json.put("base64Path", sidecar.getPath());
+            } else {
+                json.put("index", index);
+                json.put("base64Chunks", Base64Streamer.stream(input, (sequence, data, last) -> this.sendBase64Event(index, sequence, data, last, callbackContext)));
+            }
+        }
+    }
+
+    /**
+     * Reads up to length bytes of a picked item starting at offset and returns them to JS
+     * as an ArrayBuffer. An empty buffer means the end of the file was reached.
+     *
+     * Only the content uris a zero-copy import returned can be read, any other uri fails
+     * with FILE_ACCESS_ERROR, so JS cannot reach the private files of the app through it.
+     */
+    private void readFile(Uri uri, long offset, int length, CallbackContext callbackContext) {
+        if (!this.isReturnedUri(uri)) {
+            callbackContext.error(FILE_ACCESS_ERROR);
+            return;
+        }
+        ContentResolver resolver = cordova.getActivity().getContentResolver();
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r")) {
+            if (pfd == null) {
+                // The provider crashed or has nothing for this uri
+                callbackContext.error(FILE_ACCESS_ERROR);
+                return;
+            }
+            this.readRange(pfd, offset, length, callbackContext);
+        } catch (FileNotFoundException | SecurityException e) {
+            callbackContext.error(FILE_ACCESS_ERROR);
+        } catch (Exception e) {
+            callbackContext.error("Unexpected error: " + e);
+        }
     }
 
-    private void hideLoader() {
-        if (this.layout != null) {
-            this.layout.removeAllViews();
-            ((ViewGroup) this.layout.getParent()).removeView(layout);
-            this.layout = null;
-            cordova.getActivity().getWindow()
-              .clearFlags(WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE);
+    /**
+     * Tells whether uri is the path of an item returned by a zero-copy import, of this
+     * process or of a job whose manifest is still kept.
+     */
+    private boolean isReturnedUri(Uri uri) {
+        if (!ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            return false;
+        }
+        String path = uri.toString();
+        if (this.returnedUris.contains(path)) {
+            return true;
+        }
+        if (ImportJob.hasReturned(this.getJobsDirectory(), path)) {
+            this.returnedUris.add(path);
+            return true;
+        }
+        return false;
+    }
+
+    private void readRange(ParcelFileDescriptor pfd, long offset, int length, CallbackContext callbackContext) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(pfd.getFileDescriptor())) {
+            FileChannel channel = inputStream.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            try {
+                channel.position(offset);
+            } catch (IOException e) {
+                // Pipes and sockets are not seekable, skip up to the requested offset instead
+                long skipped = 0;
+                while (skipped < offset) {
+                    long n = inputStream.skip(offset - skipped);
+                    if (n <= 0) {
+                        // skip may stop short of the end, a read tells them apart
+                        if (inputStream.read() == -1) {
+                            // offset is past the end of the file, nothing to return
+                            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, new byte[0]));
+                            return;
+                        }
+                        n = 1;
+                    }
+                    skipped += n;
+                }
+            }
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // keep reading until the range is filled or the end of the file is reached
+            }
+            byte[] bytes = new byte[buffer.position()];
+            buffer.flip();
+            buffer.get(bytes);
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, bytes));
+        }
+    }
+
+    /**
+     * Streaming mode: sends a finished item to JS as soon as it is ready, keeping the
+     * callback alive for the following events. Items can arrive out of selection order,
+     * the index gives their position in the selection.
+     */
+    private void sendItemEvent(int index, JSONObject item, CallbackContext callbackContext) throws JSONException {
+        JSONObject event = new JSONObject();
+        event.put("type", "item");
+        event.put("index", index);
+        event.put("item", item);
+        PluginResult result = new PluginResult(PluginResult.Status.OK, event);
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
+    }
+
+    private void sendProgressEvent(int index, long bytesCopied, long totalBytes, long totalBytesCopied, ImportProgress progress, CallbackContext callbackContext) {
+        try {
+            JSONObject event = new JSONObject();
+            event.put("type", "progress");
+            event.put("index", index);
+            event.put("bytesCopied", bytesCopied);
+            event.put("totalBytes", totalBytes);
+            event.put("totalBytesCopied", totalBytesCopied);
+            event.put("itemsDone", progress.getItemsDone());
+            event.put("itemCount", progress.getItemCount());
+            PluginResult result = new PluginResult(PluginResult.Status.OK, event);
+            result.setKeepCallback(true);
+            callbackContext.sendPluginResult(result);
+        } catch (JSONException e) {
+            Log.e("ImagePicker", "sendProgressEvent: " + e.getMessage());
+        }
+    }
+
+    private void sendBase64Event(int index, int sequence, String data, boolean last, CallbackContext callbackContext) {
+        try {
+            JSONObject event = new JSONObject();
+            event.put("type", "base64");
+            event.put("index", index);
+            event.put("sequence", sequence);
+            event.put("data", data);
+            event.put("last", last);
+            PluginResult result = new PluginResult(PluginResult.Status.OK, event);
+            result.setKeepCallback(true);
+            callbackContext.sendPluginResult(result);
+        } catch (JSONException e) {
+            Log.e("ImagePicker", "sendBase64Event: " + e.getMessage());
         }
     }
 
+    /**
+     * Tells JS the id of the job as soon as it starts, so it can be kept to cancel the job
+     * or resume it after the activity is recreated.
+     */
+    private void sendJobEvent(String jobId, CallbackContext callbackContext) {
+        try {
+            JSONObject event = new JSONObject();
+            event.put("type", "job");
+            event.put("jobId", jobId);
+            PluginResult result = new PluginResult(PluginResult.Status.OK, event);
+            result.setKeepCallback(true);
+            callbackContext.sendPluginResult(result);
+        } catch (JSONException e) {
+            Log.e("ImagePicker", "sendJobEvent: " + e.getMessage());
+        }
+    }
+
+    private void sendCompleteEvent(String jobId, JSONArray results, JSONArray rejected, JSONObject metrics, CallbackContext callbackContext) throws JSONException {
+        JSONObject event = new JSONObject();
+        event.put("type", "complete");
+        event.put("jobId", jobId);
+        event.put("results", results);
+        event.put("rejected", rejected);
+        if (metrics != null) {
+            event.put("metrics", metrics);
+        }
+        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, event));
+    }
+
+    private JSONObject publishMetrics(ImportMetrics metrics) throws JSONException {
+        metrics.finish();
+        JSONObject json = metrics.toJSON();
+        this.lastMetrics = json;
+        ImportMetrics.Listener listener = metricsListener;
+        if (listener != null) {
+            listener.onMetrics(json);
+        }
+        return json;
+    }
+
+    private void cancelImports(List<Future<JSONObject>> imports) {
+        for (Future<JSONObject> item : imports) {
+            item.cancel(true);
+        }
+    }
+
+    private File getJobsDirectory() {
+        return new File(cordova.getContext().getFilesDir(), JOBS_DIRECTORY);
+    }
+
+    private synchronized ExecutorService getImportExecutor() {
+        if (this.importExecutor == null || this.importExecutor.isShutdown()) {
+            this.importExecutor = Executors.newSingleThreadExecutor();
+        }
+        return this.importExecutor;
+    }
+
+    private synchronized ThreadPoolExecutor getWorkerPool(int parallelism) {
+        if (this.workerPool == null || this.workerPool.isShutdown()) {
+            this.workerPool = new ThreadPoolExecutor(parallelism, parallelism,
+                    WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            this.workerPool.allowCoreThreadTimeOut(true);
+        } else if (parallelism > this.workerPool.getMaximumPoolSize()) {
+            // The maximum pool size can never be below the core size, so grow it first
+            this.workerPool.setMaximumPoolSize(parallelism);
+            this.workerPool.setCorePoolSize(parallelism);
+        } else if (parallelism < this.workerPool.getMaximumPoolSize()) {
+            this.workerPool.setCorePoolSize(parallelism);
+            this.workerPool.setMaximumPoolSize(parallelism);
+        }
+        return this.workerPool;
+    }
+
+    @Override
+    public void onDestroy() {
+        synchronized (this) {
+            if (this.importExecutor != null) {
+                this.importExecutor.shutdownNow();
+                this.importExecutor = null;
+            }
+            if (this.workerPool != null) {
+                this.workerPool.shutdownNow();
+                this.workerPool = null;
+            }
+            this.thumbnails.shutdown();
+            if (this.uploader != null) {
+                this.uploader.shutdown();
+            }
+        }
+        super.onDestroy();
+    }
+
     /**
     * Choosing a picture launches another Activity, so we need to implement the
     * save/restore APIs to handle the case where the CordovaActivity is killed by the OS
@@ -259,19 +849,21 @@ public class ImagePicker extends CordovaPlugin {
     */
     public void onRestoreStateForActivityResult(Bundle state, CallbackContext callbackContext) {
         this.callbackContext = callbackContext;
+        this.restoredJobId = state != null ? state.getString(STATE_JOB_ID) : null;
     }
 
-    public boolean isVideo(String filePath) {
-        String extension = MimeTypeMap.getFileExtensionFromUrl(filePath);
-        String mime = MimeTypeMap.getSingleton().getMimeTypeFromExtension(
-                extension != null ? extension.toLowerCase() : null
-        );
-        return mime != null && mime.startsWith("video/");
-    }
-
-    public boolean isVideo(Uri uri) {
-        String mime = cordova.getActivity().getContentResolver().getType(uri);
-        return mime != null && mime.startsWith("video/");
+    /**
+     * Keeps the id of the running job, so that resumeImport picks it up by default once the
+     * activity is recreated. The job itself is resumed from its manifest.
+     */
+    @Override
+    public Bundle onSaveInstanceState() {
+        Bundle state = new Bundle();
+        ImportJob job = this.currentJob;
+        if (job != null) {
+            state.putString(STATE_JOB_ID, job.id);
+        }
+        return state;
     }
 
     @Override
@@ -304,133 +896,6 @@ public class ImagePicker extends CordovaPlugin {
         callbackContext.success(1);
     }
 
-    private String copyFileToInternalStorage(Uri uri, String newDirName) {
-        Uri returnUri = uri;
-        Cursor returnCursor = null;
-        try {
-            returnCursor = cordova.getActivity().getContentResolver().query(
-                returnUri,
-                new String[]{OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE},
-                null,
-                null,
-                null
-            );
-        } catch (SecurityException se) {
-            (Toast.makeText(cordova.getContext(), FILE_ACCESS_ERROR, Toast.LENGTH_LONG)).show();
-            Log.d("error", se.getMessage());
-            return "-1";
-        }
-
-        int nameIndex = returnCursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
-        returnCursor.moveToFirst();
-        String name = returnCursor.getString(nameIndex);
-
-        File output;
-        if (!newDirName.equals("")) {
-            File dir = new File(cordova.getContext().getFilesDir() + "/" + newDirName);
-            if (!dir.exists()) {
-                dir.mkdir();
-            }
-            output = new File(cordova.getContext().getFilesDir() + "/" + newDirName + "/" + name);
-        } else {
-            output = new File(cordova.getContext().getFilesDir() + "/" + name);
-        }
-        try {
-            InputStream inputStream = cordova.getActivity().getContentResolver().openInputStream(uri);
-            FileOutputStream outputStream = new FileOutputStream(output);
-            int read = 0;
-            int bufferSize = 1024;
-            final byte[] buffers = new byte[bufferSize];
-            while ((read = inputStream.read(buffers)) != -1) {
-                outputStream.write(buffers, 0, read);
-            }
-            inputStream.close();
-            outputStream.close();
-
-        } catch (Exception e) {
-            Log.e("copyToInternalStorage ", e.getMessage());
-        }
-
-        return output.getPath();
-    }
-
-    private double getFileSizeFromUri(Uri uri) {
-        double sizeBytes = 0;
-        Cursor cursor = cordova.getActivity().getContentResolver().query(
-                uri,
-                null,
-                null,
-                null,
-                null
-        );
-        if (cursor != null) {
-            int sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE);
-            cursor.moveToFirst();
-            sizeBytes = cursor.getLong(sizeIndex);
-            cursor.close();
-        }
-
-        // Convert bytes → MB
-        return sizeBytes / (1024.0 * 1024.0);
-    }
-
-    private String generateVideoThumbnail(File videoFile) {
-        String thumbnailUri = "";
-        if (cordova.getContext() == null) { return thumbnailUri; }
-
-        String filename = "video_thumb_" + UUID.randomUUID().toString() + ".jpg";
-        File thumbnail = new File(cordova.getContext().getFilesDir(), filename);
-        Bitmap bitmap = null;
-        Size size = null;
-
-        try (MediaMetadataRetriever retriever = new MediaMetadataRetriever()) {
-            retriever.setDataSource(String.valueOf(videoFile));
-
-            String widthStr = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH);
-            String heightStr = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT);
-
-            if (widthStr != null && heightStr != null) {
-                int videoWidth = Integer.parseInt(widthStr);
-                int videoHeight = Integer.parseInt(heightStr);
-                size = new Size(videoWidth, videoHeight);
-            }
-            try {
-                retriever.release();
-            } catch (IOException e) {
-                Log.e("ImagePicker", "generateVideoThumbnail: " + e.getMessage());
-            }
-        } catch (Exception e) {
-            Log.e("ImagePicker", "generateVideoThumbnail: " + e.getMessage());
-        }
-
-        if (size == null) {
-            size = new Size(500, 500);
-        }
-
-        try {
-            bitmap = ThumbnailUtils.createVideoThumbnail(videoFile, size, null);
-        } catch (IOException e) {
-            bitmap = generateColoredBitmap(size, Color.DKGRAY);
-        }
-        try (FileOutputStream out = new FileOutputStream(thumbnail)) {
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 80, out);
-            out.flush();
-        } catch (Exception e) {
-            return thumbnailUri;
-        }
-
-        thumbnailUri = Uri.fromFile(thumbnail).toString();
-        return thumbnailUri;
-    }
-
-    public Bitmap generateColoredBitmap(Size size, int color) {
-        Bitmap bitmap = Bitmap.createBitmap(size.getWidth(), size.getHeight(), Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-        canvas.drawColor(color);
-
-        return bitmap;
-    }
-
     private void showMaxLimitWarning(boolean useFilePicker) {
         String toastMsg = "You can only select up to " + this.maxImageCount + " image(s)";
         if (useFilePicker) {
@@ -0,0 +1,240 @@
+package com.spoon.imagepicker;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Size;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Resizes and recompresses picked images straight from their content uri, so the full
+ * resolution original never has to be copied.
+ *
+ * The source is decoded once: inSampleSize does the coarse power of two reduction and
+ * the density scaling of BitmapFactory the exact one, so at most one bitmap of the output
+ * size (plus its rotated copy when the EXIF orientation is not normal) is held per worker.
+ */
+class ImageResizer {
+    private final int maxWidth;
+    private final int maxHeight;
+    private final int quality;
+    private final String format;
+
+    /**
+     * @param maxWidth maximum width of the output, 0 for no limit
+     * @param maxHeight maximum height of the output, 0 for no limit
+     * @param quality encoding quality, 0-100
+     * @param format "jpeg" or "webp"
+     */
+    ImageResizer(int maxWidth, int maxHeight, int quality, String format) {
+        this.maxWidth = Math.max(0, maxWidth);
+        this.maxHeight = Math.max(0, maxHeight);
+        this.quality = Math.max(0, Math.min(100, quality));
+        this.format = "webp".equalsIgnoreCase(format) ? "webp" : "jpeg";
+    }
+
+    /**
+     * Returns true when the item has to go through the resizer. Videos and animated GIFs
+     * are always copied as they are.
+     */
+    boolean shouldResize(MediaItemMetadata metadata) {
+        if (metadata.isVideo() || "image/gif".equals(metadata.mimeType)) {
+            return false;
+        }
+        return this.maxWidth > 0 || this.maxHeight > 0 || this.quality < 100;
+    }
+
+    /**
+     * Returns a description of the settings, imports made with different settings cannot
+     * share their outputs.
+     */
+    String getSettings() {
+        return this.maxWidth + "x" + this.maxHeight + "@" + this.quality + "." + this.format;
+    }
+
+    /**
+     * Returns name with its extension replaced by the one of the output format.
+     */
+    String getOutputName(String name) {
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+        return baseName + ("webp".equals(this.format) ? ".webp" : ".jpg");
+    }
+
+    /**
+     * Decodes uri, scales it to fit the maximum width and height while keeping its aspect
+     * ratio, applies its EXIF orientation and writes it to destination. The dimensions of
+     * the metadata are filled in when the provider did not report them, from the probed
+     * header or else a bounds decode, and its orientation is set to the rotation applied.
+     *
+     * @return the dimensions of the written image
+     */
+    Size resize(ContentResolver resolver, MediaItemMetadata metadata, File destination) throws IOException {
+        Uri uri = metadata.uri;
+        // One read of the head gives the dimensions and orientation of most images
+        HeaderProbe probe = HeaderProbe.read(resolver, uri);
+        if ((metadata.width <= 0 || metadata.height <= 0) && probe.hasDimensions()) {
+            metadata.width = probe.width;
+            metadata.height = probe.height;
+        }
+        if (metadata.width <= 0 || metadata.height <= 0) {
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            this.decode(resolver, uri, bounds);
+            metadata.width = bounds.outWidth;
+            metadata.height = bounds.outHeight;
+        }
+        int sourceWidth = metadata.width;
+        int sourceHeight = metadata.height;
+        if (sourceWidth <= 0 || sourceHeight <= 0) {
+            throw new IOException("Cannot decode " + uri);
+        }
+
+        int orientation = probe.orientation != ExifInterface.ORIENTATION_UNDEFINED ? probe.orientation : this.readOrientation(resolver, uri);
+        // Tells the caller how the original is displayed, the output itself is written upright
+        metadata.orientation = HeaderProbe.getRotation(orientation, probe.rotation);
+        boolean transposed = orientation == ExifInterface.ORIENTATION_ROTATE_90
+            || orientation == ExifInterface.ORIENTATION_ROTATE_270
+            || orientation == ExifInterface.ORIENTATION_TRANSPOSE
+            || orientation == ExifInterface.ORIENTATION_TRANSVERSE;
+
+        // The limits apply to the image as displayed, the decoder works on the stored one
+        float scale = transposed ? this.getScale(sourceHeight, sourceWidth) : this.getScale(sourceWidth, sourceHeight);
+        int targetWidth = Math.max(1, Math.round(sourceWidth * scale));
+        int targetHeight = Math.max(1, Math.round(sourceHeight * scale));
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = getSampleSize(sourceWidth, sourceHeight, targetWidth, targetHeight);
+        int sampledWidth = sourceWidth / options.inSampleSize;
+        if (targetWidth < sampledWidth) {
+            options.inScaled = true;
+            options.inDensity = sampledWidth;
+            options.inTargetDensity = targetWidth;
+        }
+        Bitmap bitmap = this.decode(resolver, uri, options);
+        if (bitmap == null) {
+            throw new IOException("Cannot decode " + uri);
+        }
+
+        Bitmap oriented = applyOrientation(bitmap, orientation);
+        if (oriented != bitmap) {
+            bitmap.recycle();
+        }
+        try {
+            this.write(oriented, destination);
+            return new Size(oriented.getWidth(), oriented.getHeight());
+        } finally {
+            oriented.recycle();
+        }
+    }
+
+    private float getScale(int width, int height) {
+        float scale = 1f;
+        if (this.maxWidth > 0) {
+            scale = Math.min(scale, (float) this.maxWidth / width);
+        }
+        if (this.maxHeight > 0) {
+            scale = Math.min(scale, (float) this.maxHeight / height);
+        }
+        return scale;
+    }
+
+    /**
+     * Returns the largest power of two that keeps the decoded image at least as large as
+     * the target, the remaining reduction is done by the density scaling.
+     */
+    static int getSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private Bitmap decode(ContentResolver resolver, Uri uri, BitmapFactory.Options options) throws IOException {
+        try (InputStream input = resolver.openInputStream(uri)) {
+            if (input == null) {
+                throw new FileNotFoundException("No content for " + uri);
+            }
+            return BitmapFactory.decodeStream(input, null, options);
+        }
+    }
+
+    private int readOrientation(ContentResolver resolver, Uri uri) {
+        try (InputStream input = resolver.openInputStream(uri)) {
+            if (input == null) {
+                return ExifInterface.ORIENTATION_NORMAL;
+            }
+            return new ExifInterface(input).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    static Bitmap applyOrientation(Bitmap bitmap, int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                break;
+            default:
+                return bitmap;
+        }
+        return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+    }
+
+    @SuppressWarnings("deprecation")
+    private Bitmap.CompressFormat getCompressFormat() {
+        if (!"webp".equals(this.format)) {
+            return Bitmap.CompressFormat.JPEG;
+        }
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+
+    private void write(Bitmap bitmap, File destination) throws IOException {
+        File temp = File.createTempFile(".resize", ".part", destination.getParentFile());
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                if (!bitmap.compress(this.getCompressFormat(), this.quality, out)) {
+                    throw new IOException("Cannot encode " + destination);
+                }
+            }
+            if (!temp.renameTo(destination)) {
+                throw new IOException("Cannot move " + temp + " to " + destination);
+            }
+        } finally {
+            if (temp.exists()) {
+                temp.delete();
+            }
+        }
+    }
+}
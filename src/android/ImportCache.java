@@ -0,0 +1,329 @@
+package com.spoon.imagepicker;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * On-disk cache of imported items, so that picking the same media again skips the copy
+ * and the thumbnail work.
+ *
+ * Entries are keyed by the source uri, its size, its modification date and the import
+ * settings (see getKey). Each entry owns a directory holding its files, and an index file
+ * keeps the result JSON of every entry in least recently used order. The cache is trimmed
+ * by age first, then by size, evicting the least recently used entries.
+ *
+ * The index is saved on every put, and the directories it does not list are deleted when
+ * it is loaded, so a process killed during an import leaves no orphaned files behind.
+ * Entries being written are in flight from getEntryDirectory to release: no other import
+ * gets their directory, and clear leaves it to its writer.
+ */
+class ImportCache {
+    private static final String INDEX_FILE = "index.json";
+
+    static final long DEFAULT_MAX_BYTES = 500L * 1024 * 1024;
+    static final long DEFAULT_MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+
+    private final File directory;
+    // Access ordered, so that iteration starts with the least recently used entry
+    private final LinkedHashMap<String, JSONObject> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Keys whose directory an import is writing to
+    private final Set<String> inFlight = new HashSet<>();
+    private boolean loaded;
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private long maxAge = DEFAULT_MAX_AGE;
+    private int hits;
+    private int misses;
+
+    ImportCache(File directory) {
+        this.directory = directory;
+    }
+
+    synchronized void configure(long maxBytes, long maxAge) {
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Returns the cache key of an item imported with the given settings, or null when the
+     * provider does not report enough about the item to tell if it changed.
+     */
+    static String getKey(MediaItemMetadata metadata, String settings) {
+        if (metadata.size < 0) {
+            return null;
+        }
+        String source = metadata.uri + "|" + metadata.size + "|" + metadata.dateModified + "|" + settings;
+        try {
+            StringBuilder key = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8))) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the empty directory the files of an entry have to be written to, or null when
+     * another import is writing the same entry. Files left over from an evicted or
+     * interrupted import of the same key are deleted first. Every directory returned has to
+     * be given back with release.
+     */
+    synchronized File getEntryDirectory(String key) {
+        this.load();
+        if (!this.inFlight.add(key)) {
+            return null;
+        }
+        this.entries.remove(key);
+        File entryDirectory = new File(this.directory, key);
+        delete(entryDirectory);
+        entryDirectory.mkdirs();
+        return entryDirectory;
+    }
+
+    /**
+     * Returns a copy of the cached result, or null when there is no entry for the key or one
+     * of its files was deleted, in which case the entry is dropped.
+     */
+    synchronized JSONObject get(String key) {
+        this.load();
+        JSONObject entry = this.entries.get(key);
+        try {
+            if (entry != null && hasFiles(entry.getJSONObject("result"))) {
+                entry.put("lastAccess", System.currentTimeMillis());
+                this.hits++;
+                JSONObject result = new JSONObject(entry.getJSONObject("result").toString());
+                result.put("cached", true);
+                return result;
+            }
+        } catch (JSONException e) {
+            Log.e("ImagePicker", "ImportCache: " + e.getMessage());
+        }
+        if (entry != null) {
+            this.entries.remove(key);
+            delete(new File(this.directory, key));
+            this.save();
+        }
+        this.misses++;
+        return null;
+    }
+
+    synchronized void put(String key, JSONObject result) {
+        this.load();
+        try {
+            JSONObject entry = new JSONObject();
+            entry.put("key", key);
+            // Stored as a copy, the caller keeps adding per-call fields to the result
+            entry.put("result", new JSONObject(result.toString()));
+            entry.put("bytes", sizeOf(new File(this.directory, key)));
+            entry.put("lastAccess", System.currentTimeMillis());
+            this.entries.put(key, entry);
+        } catch (JSONException e) {
+            Log.e("ImagePicker", "ImportCache: " + e.getMessage());
+        }
+        // Saved right away, an entry missing from the index would be swept on the next load
+        this.save();
+    }
+
+    /**
+     * Ends the write of an entry started by getEntryDirectory. Its files are deleted unless
+     * the entry was put.
+     */
+    synchronized void release(String key) {
+        if (this.inFlight.remove(key) && !this.entries.containsKey(key)) {
+            delete(new File(this.directory, key));
+        }
+    }
+
+    /**
+     * Evicts the entries older than the maximum age, then the least recently used ones
+     * until the cache fits its maximum size, and saves the index.
+     */
+    synchronized void trim() {
+        this.load();
+        long now = System.currentTimeMillis();
+        long bytes = 0;
+        for (JSONObject entry : this.entries.values()) {
+            bytes += entry.optLong("bytes");
+        }
+        Iterator<Map.Entry<String, JSONObject>> iterator = this.entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            JSONObject entry = iterator.next().getValue();
+            boolean expired = now - entry.optLong("lastAccess") > this.maxAge;
+            if (expired || bytes > this.maxBytes) {
+                bytes -= entry.optLong("bytes");
+                delete(new File(this.directory, entry.optString("key")));
+                iterator.remove();
+            }
+        }
+        this.save();
+    }
+
+    /**
+     * Deletes every entry, except the directories of the entries in flight, which are
+     * dropped when their import releases them.
+     */
+    synchronized void clear() {
+        this.entries.clear();
+        File[] children = this.directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (!this.inFlight.contains(child.getName())) {
+                    delete(child);
+                }
+            }
+        }
+        this.loaded = true;
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    synchronized JSONObject getStats() throws JSONException {
+        this.load();
+        long bytes = 0;
+        for (JSONObject entry : this.entries.values()) {
+            bytes += entry.optLong("bytes");
+        }
+        JSONObject stats = new JSONObject();
+        stats.put("entries", this.entries.size());
+        stats.put("bytes", bytes);
+        stats.put("maxBytes", this.maxBytes);
+        stats.put("maxAge", this.maxAge);
+        stats.put("hits", this.hits);
+        stats.put("misses", this.misses);
+        return stats;
+    }
+
+    private void load() {
+        if (this.loaded) {
+            return;
+        }
+        this.loaded = true;
+        File index = new File(this.directory, INDEX_FILE);
+        if (index.exists()) {
+            this.read(index);
+        }
+        this.sweep();
+    }
+
+    private void read(File index) {
+        try (InputStream input = new FileInputStream(index)) {
+            byte[] bytes = new byte[(int) index.length()];
+            int length = 0;
+            int read;
+            while (length < bytes.length && (read = input.read(bytes, length, bytes.length - length)) != -1) {
+                length += read;
+            }
+            JSONArray array = new JSONArray(new String(bytes, 0, length, StandardCharsets.UTF_8));
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject entry = array.getJSONObject(i);
+                this.entries.put(entry.getString("key"), entry);
+            }
+        } catch (IOException | JSONException e) {
+            // A corrupt index only costs a re-import of the entries it listed
+            Log.e("ImagePicker", "ImportCache: " + e.getMessage());
+            this.entries.clear();
+        }
+    }
+
+    /**
+     * Deletes the entry directories the index does not list, left by an import which was
+     * interrupted before its entry was saved.
+     */
+    private void sweep() {
+        File[] children = this.directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory() && !this.entries.containsKey(child.getName())) {
+                delete(child);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the files a cached result points to still exist: its path, unless the
+     * item was not copied, and its video thumbnail.
+     */
+    private static boolean hasFiles(JSONObject result) {
+        for (String name : new String[]{"path", "thumbnail"}) {
+            String value = result.optString(name);
+            if (value.isEmpty()) {
+                continue;
+            }
+            // Copies are plain paths, thumbnails file uris, zero-copy items content uris
+            File file = value.startsWith(ContentResolver.SCHEME_FILE + ":") ? new File(Uri.parse(value).getPath())
+                : value.startsWith(ContentResolver.SCHEME_CONTENT + ":") ? null
+                : new File(value);
+            if (file != null && !file.exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void save() {
+        if (!this.directory.exists() && !this.directory.mkdirs()) {
+            return;
+        }
+        List<JSONObject> ordered = new ArrayList<>(this.entries.values());
+        File index = new File(this.directory, INDEX_FILE);
+        File temp = new File(this.directory, INDEX_FILE + ".part");
+        try (OutputStream output = new FileOutputStream(temp)) {
+            output.write(new JSONArray(ordered).toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.e("ImagePicker", "ImportCache: " + e.getMessage());
+            return;
+        }
+        if (!temp.renameTo(index)) {
+            temp.delete();
+        }
+    }
+
+    static long sizeOf(File file) {
+        if (file.isFile()) {
+            return file.length();
+        }
+        long size = 0;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                size += sizeOf(child);
+            }
+        }
+        return size;
+    }
+
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
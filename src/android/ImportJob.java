@@ -0,0 +1,427 @@
+package com.spoon.imagepicker;
+
+import android.content.ContentResolver;
+import android.content.Intent;
+import android.content.UriPermission;
+import android.net.Uri;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Future;
+
+/**
+ * An import of picked items, identified by an id and backed by a manifest file holding its
+ * source uris, the outcome of its ImportPlan and the result of every item imported so far.
+ *
+ * The manifest is rewritten through a temporary file, at most once per SAVE_INTERVAL_MS
+ * while items complete and always when the job finishes, so when the activity or the
+ * process dies mid import the job can be resumed: completed items are returned from the
+ * manifest and only the remaining ones are imported, those of the last interval again.
+ * Read access to the picked uris is persisted in the background once the job is created,
+ * where the provider allows it, so that a later process can still read them. Expired jobs
+ * give it back when they are pruned.
+ */
+class ImportJob {
+    static final String STATE_RUNNING = "running";
+    static final String STATE_CANCELLED = "cancelled";
+    static final String STATE_FAILED = "failed";
+    static final String STATE_COMPLETE = "complete";
+
+    // Manifests of older jobs are deleted by prune
+    static final long MAX_AGE = 24L * 60 * 60 * 1000;
+
+    private static final String MANIFEST_EXTENSION = ".json";
+    private static final long SAVE_INTERVAL_MS = 1000;
+
+    final String id;
+    final List<Uri> uris;
+    private final File manifest;
+    private String state = STATE_RUNNING;
+    private boolean planned;
+    private final List<Integer> accepted = new ArrayList<>();
+    private JSONArray rejected = new JSONArray();
+    private final Map<Integer, JSONObject> results = new HashMap<>();
+    // Uris whose read permission the job persisted, released once it is done with them
+    private final List<Uri> persisted = new ArrayList<>();
+    // Set once the permissions were released or kept, grants persisted later follow suit
+    private boolean permissionsDone;
+    private boolean permissionsKept;
+    // Results completed since the manifest was last saved
+    private boolean dirty;
+    private long savedAt;
+    // Imports in flight, only known to the process running the job
+    private final List<Future<?>> tasks = new ArrayList<>();
+    private boolean cancelled;
+
+    private ImportJob(File directory, String id, List<Uri> uris) {
+        this.id = id;
+        this.uris = uris;
+        this.manifest = new File(directory, id + MANIFEST_EXTENSION);
+    }
+
+    static ImportJob create(File directory, List<Uri> uris) {
+        ImportJob job = new ImportJob(directory, UUID.randomUUID().toString(), uris);
+        job.save();
+        return job;
+    }
+
+    /**
+     * Persists the read permission of the picked uris, one IPC each, so it is meant to run
+     * on a thread of its own while the job imports. Permissions persisted before, by a
+     * zero-copy import, are not the job's to release and are left alone.
+     */
+    void persistPermissions(ContentResolver resolver) {
+        Set<Uri> held = new HashSet<>();
+        for (UriPermission permission : resolver.getPersistedUriPermissions()) {
+            if (permission.isReadPermission()) {
+                held.add(permission.getUri());
+            }
+        }
+        for (Uri uri : this.uris) {
+            if (!ContentResolver.SCHEME_CONTENT.equals(uri.getScheme()) || held.contains(uri)) {
+                continue;
+            }
+            try {
+                resolver.takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            } catch (SecurityException e) {
+                // Not every provider grants persistable permissions, the uri stays readable for this process
+                Log.d("ImagePicker", "ImportJob: no persistable permission for " + uri);
+                continue;
+            }
+            synchronized (this) {
+                if (this.permissionsDone) {
+                    // The job ended first, the grant belongs to its results or is not needed anymore
+                    if (!this.permissionsKept) {
+                        release(resolver, uri);
+                    }
+                } else {
+                    this.persisted.add(uri);
+                    this.dirty = true;
+                }
+            }
+        }
+        synchronized (this) {
+            if (this.dirty) {
+                this.save();
+            }
+        }
+    }
+
+    /**
+     * Loads a job from its manifest, or returns null when there is none. A null id loads
+     * the most recent job.
+     */
+    static ImportJob load(File directory, String id) {
+        File manifest = id != null ? new File(directory, id + MANIFEST_EXTENSION) : latest(directory);
+        if (manifest == null || !manifest.isFile()) {
+            return null;
+        }
+        try (InputStream input = new FileInputStream(manifest)) {
+            byte[] bytes = new byte[(int) manifest.length()];
+            int length = 0;
+            int read;
+            while (length < bytes.length && (read = input.read(bytes, length, bytes.length - length)) != -1) {
+                length += read;
+            }
+            JSONObject json = new JSONObject(new String(bytes, 0, length, StandardCharsets.UTF_8));
+            List<Uri> uris = new ArrayList<>();
+            JSONArray sources = json.getJSONArray("uris");
+            for (int i = 0; i < sources.length(); i++) {
+                uris.add(Uri.parse(sources.getString(i)));
+            }
+            ImportJob job = new ImportJob(directory, json.getString("id"), uris);
+            job.state = json.optString("state", STATE_RUNNING);
+            job.planned = json.optBoolean("planned");
+            JSONArray accepted = json.optJSONArray("accepted");
+            for (int i = 0; accepted != null && i < accepted.length(); i++) {
+                job.accepted.add(accepted.getInt(i));
+            }
+            job.rejected = json.optJSONArray("rejected") != null ? json.getJSONArray("rejected") : new JSONArray();
+            JSONArray persisted = json.optJSONArray("persisted");
+            for (int i = 0; persisted != null && i < persisted.length(); i++) {
+                job.persisted.add(Uri.parse(persisted.getString(i)));
+            }
+            JSONObject results = json.optJSONObject("results");
+            if (results != null) {
+                for (int index : job.accepted) {
+                    if (results.has(String.valueOf(index))) {
+                        job.results.put(index, results.getJSONObject(String.valueOf(index)));
+                    }
+                }
+            }
+            return job;
+        } catch (IOException | JSONException e) {
+            Log.e("ImagePicker", "ImportJob: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the manifests of the jobs older than MAX_AGE, after releasing the read
+     * permissions they still hold: those of cancelled, failed or abandoned jobs.
+     */
+    static void prune(File directory, ContentResolver resolver) {
+        File[] manifests = directory.listFiles();
+        if (manifests == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File manifest : manifests) {
+            if (now - manifest.lastModified() <= MAX_AGE) {
+                continue;
+            }
+            String name = manifest.getName();
+            if (name.endsWith(MANIFEST_EXTENSION)) {
+                ImportJob job = load(directory, name.substring(0, name.length() - MANIFEST_EXTENSION.length()));
+                if (job != null) {
+                    for (Uri uri : job.persisted) {
+                        release(resolver, uri);
+                    }
+                }
+            }
+            manifest.delete();
+        }
+    }
+
+    /**
+     * Tells whether a job of directory returned path as the path of one of its items.
+     */
+    static boolean hasReturned(File directory, String path) {
+        File[] manifests = directory.listFiles((dir, name) -> name.endsWith(MANIFEST_EXTENSION));
+        if (manifests == null) {
+            return false;
+        }
+        for (File manifest : manifests) {
+            String name = manifest.getName();
+            ImportJob job = load(directory, name.substring(0, name.length() - MANIFEST_EXTENSION.length()));
+            if (job == null) {
+                continue;
+            }
+            for (JSONObject result : job.results.values()) {
+                if (path.equals(result.optString("path"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static File latest(File directory) {
+        File[] manifests = directory.listFiles((dir, name) -> name.endsWith(MANIFEST_EXTENSION));
+        File latest = null;
+        if (manifests != null) {
+            for (File manifest : manifests) {
+                if (latest == null || manifest.lastModified() > latest.lastModified()) {
+                    latest = manifest;
+                }
+            }
+        }
+        return latest;
+    }
+
+    synchronized boolean isPlanned() {
+        return this.planned;
+    }
+
+    /**
+     * Records which items are imported, done once per job: a resumed job keeps the plan
+     * made with the limits of the call that started it.
+     */
+    synchronized void plan(ImportPlan plan) throws JSONException {
+        for (ImportPlan.Entry entry : plan.accepted) {
+            this.accepted.add(entry.index);
+        }
+        for (ImportPlan.Rejection rejection : plan.rejected) {
+            this.rejected.put(rejection.toJSON());
+        }
+        this.planned = true;
+        this.save();
+    }
+
+    /**
+     * Returns the selection index of the accepted items, in selection order.
+     */
+    synchronized List<Integer> getAccepted() {
+        return new ArrayList<>(this.accepted);
+    }
+
+    synchronized JSONArray getRejected() {
+        return this.rejected;
+    }
+
+    /**
+     * Rejects an accepted item which can no longer be imported, when a job is resumed.
+     */
+    synchronized void reject(int index, String reason) throws JSONException {
+        this.accepted.remove(Integer.valueOf(index));
+        this.results.remove(index);
+        this.rejected.put(new ImportPlan.Rejection(index, this.uris.get(index), null, reason).toJSON());
+        this.save();
+    }
+
+    /**
+     * Returns the uris of the accepted items which still have to be imported, by selection
+     * index. Completed items whose file was deleted since are imported again.
+     */
+    synchronized Map<Integer, Uri> getPending() {
+        Map<Integer, Uri> pending = new HashMap<>();
+        for (int index : this.accepted) {
+            JSONObject result = this.results.get(index);
+            if (result != null && result.has("path")) {
+                // Copies are returned as plain paths, zero-copy items as content uris, uploaded
+                // items have no path
+                Uri path = Uri.parse(result.optString("path"));
+                boolean isFile = path.getScheme() == null || ContentResolver.SCHEME_FILE.equals(path.getScheme());
+                if (isFile && !new File(path.getPath()).exists()) {
+                    this.results.remove(index);
+                    result = null;
+                }
+            }
+            if (result == null) {
+                pending.put(index, this.uris.get(index));
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Returns a copy of the result of a completed item, or null when it is pending.
+     */
+    synchronized JSONObject getResult(int index) throws JSONException {
+        JSONObject result = this.results.get(index);
+        return result != null ? new JSONObject(result.toString()) : null;
+    }
+
+    /**
+     * Records the result of an item. The result is stored as a copy, the caller keeps adding
+     * per-call fields to it. The manifest is saved when the last save is SAVE_INTERVAL_MS old,
+     * else by a later call or by finish.
+     */
+    void complete(int index, JSONObject result) throws JSONException {
+        JSONObject copy = new JSONObject(result.toString());
+        synchronized (this) {
+            this.results.put(index, copy);
+            this.dirty = true;
+            if (System.currentTimeMillis() - this.savedAt >= SAVE_INTERVAL_MS) {
+                this.save();
+            }
+        }
+    }
+
+    synchronized void finish(String state) {
+        this.state = state;
+        this.save();
+    }
+
+    /**
+     * Releases the read permissions persisted by persistPermissions, once the items have
+     * been copied or uploaded and their uris are no longer needed.
+     */
+    synchronized void releasePermissions(ContentResolver resolver) {
+        for (Uri uri : this.persisted) {
+            release(resolver, uri);
+        }
+        this.persisted.clear();
+        this.permissionsDone = true;
+        this.save();
+    }
+
+    /**
+     * Leaves the persisted read permissions to the results of a zero-copy job, which keep
+     * pointing at the picked uris. Pruning the job then releases nothing.
+     */
+    synchronized void keepPermissions() {
+        this.persisted.clear();
+        this.permissionsDone = true;
+        this.permissionsKept = true;
+        this.save();
+    }
+
+    private static void release(ContentResolver resolver, Uri uri) {
+        try {
+            resolver.releasePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } catch (SecurityException e) {
+            Log.d("ImagePicker", "ImportJob: " + e.getMessage());
+        }
+    }
+
+    synchronized void track(Future<?> task) {
+        this.tasks.add(task);
+        if (this.cancelled) {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Cancels the imports in flight, interrupting the running ones. The items completed so
+     * far stay in the manifest, so a cancelled job can still be resumed.
+     */
+    synchronized void cancel() {
+        this.cancelled = true;
+        for (Future<?> task : this.tasks) {
+            task.cancel(true);
+        }
+    }
+
+    private void save() {
+        File directory = this.manifest.getParentFile();
+        if (!directory.exists() && !directory.mkdirs()) {
+            return;
+        }
+        File temp = new File(directory, this.id + MANIFEST_EXTENSION + ".part");
+        try (OutputStream output = new FileOutputStream(temp)) {
+            output.write(this.toJSON().toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            Log.e("ImagePicker", "ImportJob: " + e.getMessage());
+            return;
+        }
+        if (!temp.renameTo(this.manifest)) {
+            temp.delete();
+            return;
+        }
+        this.dirty = false;
+        this.savedAt = System.currentTimeMillis();
+    }
+
+    private JSONObject toJSON() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("id", this.id);
+        json.put("state", this.state);
+        JSONArray uris = new JSONArray();
+        for (Uri uri : this.uris) {
+            uris.put(uri.toString());
+        }
+        json.put("uris", uris);
+        json.put("planned", this.planned);
+        json.put("accepted", new JSONArray(this.accepted));
+        json.put("rejected", this.rejected);
+        JSONArray persisted = new JSONArray();
+        for (Uri uri : this.persisted) {
+            persisted.put(uri.toString());
+        }
+        json.put("persisted", persisted);
+        JSONObject results = new JSONObject();
+        for (Map.Entry<Integer, JSONObject> result : this.results.entrySet()) {
+            results.put(String.valueOf(result.getKey()), result.getValue());
+        }
+        json.put("results", results);
+        return json;
+    }
+}
@@ -0,0 +1,142 @@
+package com.spoon.imagepicker;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Per-stage timings and byte counters of a getPictures call, collected when the
+ * collectMetrics option is set. Timings use System.nanoTime, so they are monotonic.
+ *
+ * When metrics are disabled no instance exists and the static start / stop helpers,
+ * which accept a null item, cost a null check.
+ */
+public class ImportMetrics {
+    /**
+     * Receives the metrics of every getPictures call made with collectMetrics, see
+     * ImagePicker.setMetricsListener. Called on a background thread.
+     */
+    public interface Listener {
+        void onMetrics(JSONObject metrics);
+    }
+
+    static final int COPY = 0;
+    static final int RESIZE = 1;
+    static final int PROBE = 2;
+    static final int THUMBNAIL = 3;
+    static final int BASE64 = 4;
+    static final int JSON_BUILD = 5;
+    static final int UPLOAD = 6;
+    private static final String[] STAGES = {"copy", "resize", "probe", "thumbnail", "base64", "json", "upload"};
+
+    static class Item {
+        private final long[] nanos = new long[STAGES.length];
+        private int index;
+        private long bytesCopied;
+        private boolean cached;
+
+        // Position of the item in the selection
+        void setIndex(int index) {
+            this.index = index;
+        }
+
+        void setBytesCopied(long bytesCopied) {
+            this.bytesCopied = bytesCopied;
+        }
+
+        void setCached(boolean cached) {
+            this.cached = cached;
+        }
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("index", this.index);
+            for (int stage = 0; stage < STAGES.length; stage++) {
+                json.put(STAGES[stage] + "Ms", toMillis(this.nanos[stage]));
+            }
+            json.put("bytesCopied", this.bytesCopied);
+            json.put("copyThroughputMBps", throughput(this.bytesCopied, this.nanos[COPY]));
+            json.put("cached", this.cached);
+            return json;
+        }
+    }
+
+    private final long startNanos = System.nanoTime();
+    private long metadataNanos;
+    private long duplicatesNanos;
+    private long totalNanos;
+    private Item[] items = new Item[0];
+
+    /**
+     * Records the end of the metadata query, which is made once for the whole selection,
+     * and allocates the counters of the items accepted for import.
+     */
+    void metadataResolved(long start, int itemCount) {
+        this.metadataNanos = System.nanoTime() - start;
+        this.items = new Item[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            this.items[i] = new Item();
+        }
+    }
+
+    // Records the end of the duplicate search, which hashes items of equal size
+    void duplicatesFound(long start) {
+        this.duplicatesNanos = System.nanoTime() - start;
+    }
+
+    Item item(int index) {
+        return this.items[index];
+    }
+
+    void finish() {
+        this.totalNanos = System.nanoTime() - this.startNanos;
+    }
+
+    JSONObject toJSON() throws JSONException {
+        long[] totals = new long[STAGES.length];
+        long bytesCopied = 0;
+        int cached = 0;
+        JSONArray items = new JSONArray();
+        for (Item item : this.items) {
+            for (int stage = 0; stage < STAGES.length; stage++) {
+                totals[stage] += item.nanos[stage];
+            }
+            bytesCopied += item.bytesCopied;
+            cached += item.cached ? 1 : 0;
+            items.put(item.toJSON());
+        }
+
+        // Stage totals add up the time spent by every worker, so they can exceed totalMs
+        JSONObject json = new JSONObject();
+        json.put("itemCount", this.items.length);
+        json.put("cachedCount", cached);
+        json.put("totalMs", toMillis(this.totalNanos));
+        json.put("metadataMs", toMillis(this.metadataNanos));
+        json.put("duplicatesMs", toMillis(this.duplicatesNanos));
+        for (int stage = 0; stage < STAGES.length; stage++) {
+            json.put(STAGES[stage] + "Ms", toMillis(totals[stage]));
+        }
+        json.put("bytesCopied", bytesCopied);
+        json.put("copyThroughputMBps", throughput(bytesCopied, totals[COPY]));
+        json.put("items", items);
+        return json;
+    }
+
+    static long start(Item item) {
+        return item != null ? System.nanoTime() : 0;
+    }
+
+    static void stop(Item item, int stage, long start) {
+        if (item != null) {
+            item.nanos[stage] += System.nanoTime() - start;
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static double throughput(long bytes, long nanos) {
+        return nanos > 0 ? (bytes / (1024.0 * 1024.0)) / (nanos / 1e9) : 0;
+    }
+}
@@ -0,0 +1,116 @@
+package com.spoon.imagepicker;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settles which picked items are imported before any byte is copied. The metadata of the
+ * items within the count cap is resolved in one batched pass (see MediaItemMetadata), then
+ * each item is checked against the photo or video size limit matching its own type.
+ */
+class ImportPlan {
+    static final String REASON_MAX_IMAGE_COUNT = "maxImageCount";
+    static final String REASON_MAX_PHOTO_SIZE = "maxPhotoSize";
+    static final String REASON_MAX_VIDEO_SIZE = "maxVideoSize";
+    // Set when a resumed job lost the permission to read an item
+    static final String REASON_UNREADABLE = "unreadable";
+
+    static class Entry {
+        // Position of the item in the selection
+        final int index;
+        final MediaItemMetadata metadata;
+
+        Entry(int index, MediaItemMetadata metadata) {
+            this.index = index;
+            this.metadata = metadata;
+        }
+    }
+
+    static class Rejection {
+        final int index;
+        final Uri uri;
+        final MediaItemMetadata metadata;
+        final String reason;
+
+        Rejection(int index, Uri uri, MediaItemMetadata metadata, String reason) {
+            this.index = index;
+            this.uri = uri;
+            this.metadata = metadata;
+            this.reason = reason;
+        }
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("index", this.index);
+            json.put("uri", this.uri.toString());
+            json.put("reason", this.reason);
+            if (this.metadata != null) {
+                json.put("name", this.metadata.getFileName());
+                json.put("size", this.metadata.size);
+                json.put("isVideo", this.metadata.isVideo());
+            }
+            return json;
+        }
+    }
+
+    final List<Entry> accepted = new ArrayList<>();
+    final List<Rejection> rejected = new ArrayList<>();
+
+    /**
+     * @param uris every picked uri, in selection order
+     * @param maxPhotoSize size limit of images, in MB
+     * @param maxVideoSize size limit of videos, in MB
+     */
+    static ImportPlan create(Context context, List<Uri> uris, int maxImageCount, int maxPhotoSize, int maxVideoSize) {
+        ImportPlan plan = new ImportPlan();
+        int count = Math.min(uris.size(), Math.max(0, maxImageCount));
+        List<MediaItemMetadata> items = MediaItemMetadata.resolve(context, uris.subList(0, count));
+        for (int i = 0; i < count; i++) {
+            MediaItemMetadata metadata = items.get(i);
+            boolean isVideo = metadata.isVideo();
+            if (metadata.getSizeInMb() > (isVideo ? maxVideoSize : maxPhotoSize)) {
+                plan.rejected.add(new Rejection(i, metadata.uri, metadata, isVideo ? REASON_MAX_VIDEO_SIZE : REASON_MAX_PHOTO_SIZE));
+            } else {
+                plan.accepted.add(new Entry(i, metadata));
+            }
+        }
+        // Items past the count cap are rejected without querying their provider
+        for (int i = count; i < uris.size(); i++) {
+            plan.rejected.add(new Rejection(i, uris.get(i), null, REASON_MAX_IMAGE_COUNT));
+        }
+        return plan;
+    }
+
+    /**
+     * Returns whether uri can still be opened, a resumed job may have lost its permission.
+     */
+    static boolean isReadable(ContentResolver resolver, Uri uri) {
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r")) {
+            return pfd != null;
+        } catch (FileNotFoundException | SecurityException e) {
+            return false;
+        } catch (IOException e) {
+            // Thrown by close, the uri did open
+            return true;
+        }
+    }
+
+    boolean hasSizeRejections() {
+        for (Rejection rejection : this.rejected) {
+            if (!REASON_MAX_IMAGE_COUNT.equals(rejection.reason)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,217 @@
+package com.spoon.imagepicker;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Gravity;
+import android.view.ViewGroup;
+import android.view.WindowManager;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.ProgressBar;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of an import, counted in items and bytes done, and the native UI showing it:
+ *
+ * - blocking: a full screen spinner which blocks input until the import ends
+ * - determinate: a thin progress bar at the top of the screen, input stays enabled
+ * - headless: no native UI, progress only reaches JS through the progress events
+ *
+ * Counters are updated from the worker threads, the bar is redrawn on the main thread at
+ * most once per frame however often they change.
+ */
+class ImportProgress {
+    static final String MODE_BLOCKING = "blocking";
+    static final String MODE_DETERMINATE = "determinate";
+    static final String MODE_HEADLESS = "headless";
+
+    private static final long FRAME_INTERVAL_MS = 1000 / 30;
+    private static final int MAX = 1000;
+
+    // Blocking overlays shown, the window only takes input back once the last one is hidden.
+    // Only touched on the main thread
+    private static int blockingCount;
+
+    /**
+     * Progress of a single item, see item.
+     */
+    class Item {
+        private final long size;
+        private long reported;
+
+        private Item(long size) {
+            this.size = Math.max(0, size);
+        }
+
+        /**
+         * Records the bytes of the item copied so far and returns the bytes done for the
+         * whole import.
+         */
+        long update(long bytesCopied) {
+            long delta = bytesCopied - this.reported;
+            this.reported = bytesCopied;
+            long bytesDone = ImportProgress.this.bytesDone.addAndGet(delta);
+            ImportProgress.this.invalidate();
+            return bytesDone;
+        }
+
+        /**
+         * Marks the item as done, the bytes it did not report, when it was resized or
+         * cached, are counted at once.
+         */
+        void done() {
+            ImportProgress.this.bytesDone.addAndGet(Math.max(0, this.size - this.reported));
+            ImportProgress.this.itemsDone.incrementAndGet();
+            ImportProgress.this.invalidate();
+        }
+    }
+
+    private final Activity activity;
+    private final String mode;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean frameScheduled = new AtomicBoolean();
+    private final AtomicInteger itemsDone = new AtomicInteger();
+    private final AtomicLong bytesDone = new AtomicLong();
+    private volatile int itemCount;
+    private volatile long totalBytes;
+    // Only touched on the main thread
+    private ViewGroup layout;
+    private ProgressBar bar;
+
+    private final Runnable frame = () -> {
+        this.frameScheduled.set(false);
+        this.render();
+    };
+
+    ImportProgress(Activity activity, String mode) {
+        this.activity = activity;
+        this.mode = MODE_DETERMINATE.equals(mode) || MODE_HEADLESS.equals(mode) ? mode : MODE_BLOCKING;
+    }
+
+    /**
+     * Sets the size of the import once it is planned, switching the bar to determinate.
+     */
+    void setTotals(int itemCount, long totalBytes) {
+        this.itemCount = itemCount;
+        this.totalBytes = totalBytes;
+        this.invalidate();
+    }
+
+    Item item(long size) {
+        return new Item(size);
+    }
+
+    int getItemsDone() {
+        return this.itemsDone.get();
+    }
+
+    int getItemCount() {
+        return this.itemCount;
+    }
+
+    long getBytesDone() {
+        return this.bytesDone.get();
+    }
+
+    void show() {
+        if (MODE_HEADLESS.equals(this.mode)) {
+            return;
+        }
+        this.activity.runOnUiThread(() -> {
+            if (MODE_BLOCKING.equals(this.mode)) {
+                this.showBlocking();
+            } else {
+                this.showDeterminate();
+            }
+        });
+    }
+
+    /**
+     * Removes the UI and gives input back. Safe to call more than once and on every exit
+     * path of the import.
+     */
+    void hide() {
+        if (MODE_HEADLESS.equals(this.mode)) {
+            return;
+        }
+        this.activity.runOnUiThread(() -> {
+            this.handler.removeCallbacks(this.frame);
+            if (this.layout != null) {
+                this.layout.removeAllViews();
+                ViewGroup parent = (ViewGroup) this.layout.getParent();
+                if (parent != null) {
+                    parent.removeView(this.layout);
+                }
+                this.layout = null;
+                this.bar = null;
+                if (MODE_BLOCKING.equals(this.mode) && --blockingCount == 0) {
+                    this.activity.getWindow().clearFlags(WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE);
+                }
+            }
+        });
+    }
+
+    private void showBlocking() {
+        Context context = this.activity.getApplicationContext();
+        LinearLayout layout = new LinearLayout(context);
+        layout.setGravity(Gravity.CENTER);
+        layout.setBackgroundColor(Color.parseColor("#A6000000"));
+        this.activity.addContentView(layout, new LinearLayout.LayoutParams(
+            LinearLayout.LayoutParams.MATCH_PARENT,
+            LinearLayout.LayoutParams.MATCH_PARENT
+        ));
+        if (blockingCount++ == 0) {
+            this.activity.getWindow().setFlags(
+                WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE,
+                WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE
+            );
+        }
+        layout.addView(new ProgressBar(context));
+        this.layout = layout;
+    }
+
+    private void showDeterminate() {
+        FrameLayout layout = new FrameLayout(this.activity);
+        // Only as tall as the bar, touches anywhere else reach the app
+        this.activity.addContentView(layout, new FrameLayout.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT,
+            ViewGroup.LayoutParams.WRAP_CONTENT,
+            Gravity.TOP
+        ));
+        ProgressBar bar = new ProgressBar(this.activity, null, android.R.attr.progressBarStyleHorizontal);
+        bar.setIndeterminate(true);
+        bar.setMax(MAX);
+        layout.addView(bar, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        this.layout = layout;
+        this.bar = bar;
+        this.render();
+    }
+
+    /**
+     * Schedules a redraw on the next frame, unless one is already pending.
+     */
+    private void invalidate() {
+        if (MODE_DETERMINATE.equals(this.mode) && this.frameScheduled.compareAndSet(false, true)) {
+            this.handler.postDelayed(this.frame, FRAME_INTERVAL_MS);
+        }
+    }
+
+    private void render() {
+        int itemCount = this.itemCount;
+        if (this.bar == null || itemCount == 0) {
+            return;
+        }
+        // Bytes give a smooth bar for large copies, items cover the ones of unknown size
+        double items = (double) this.itemsDone.get() / itemCount;
+        long totalBytes = this.totalBytes;
+        double bytes = totalBytes > 0 ? Math.min(1, (double) this.bytesDone.get() / totalBytes) : 0;
+        this.bar.setIndeterminate(false);
+        this.bar.setProgress((int) (Math.max(items, bytes) * MAX));
+    }
+}
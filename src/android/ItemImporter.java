@@ -0,0 +1,252 @@
+package com.spoon.imagepicker;
+
+import android.content.ContentResolver;
+import android.content.Intent;
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.util.Log;
+import android.util.Size;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Turns one picked item into its result JSON: resize or copy, header probe and video
+ * thumbnail, or a reference to the content uri in zero-copy mode.
+ *
+ * It only depends on a ContentResolver and the engines it is given, not on Cordova, so
+ * that the pipeline can run against any ContentProvider.
+ */
+class ItemImporter {
+    private final ContentResolver resolver;
+    private final MediaCopier copier;
+    private final ImageResizer resizer;
+    private final VideoThumbnailer thumbnailer;
+    // Video thumbnails are left to getThumbnail, only the video metadata is read
+    private final boolean lazyThumbnails;
+
+    ItemImporter(ContentResolver resolver, MediaCopier copier, ImageResizer resizer, VideoThumbnailer thumbnailer, boolean lazyThumbnails) {
+        this.resolver = resolver;
+        this.copier = copier;
+        this.resizer = resizer;
+        this.thumbnailer = thumbnailer;
+        this.lazyThumbnails = lazyThumbnails;
+    }
+
+    /**
+     * Returns a description of the settings, imports made with different settings cannot
+     * share their outputs.
+     */
+    String getSettings() {
+        return this.resizer.getSettings() + "|" + (this.lazyThumbnails ? "lazy" : this.thumbnailer.getSettings());
+    }
+
+    /**
+     * Imports a single item accepted by the ImportPlan on a worker thread: copy, header
+     * probe and video thumbnail, writing its files to directory. listener, when not null,
+     * is told about the bytes copied so far, and itemMetrics, when not null, collects the
+     * time spent in each stage.
+     */
+    JSONObject importItem(MediaItemMetadata metadata, OutputLayout.Directory directory, MediaCopier.ProgressListener listener, ImportMetrics.Item itemMetrics) throws JSONException, IOException {
+        boolean isVideo = metadata.isVideo();
+        if (this.resizer.shouldResize(metadata)) {
+            long resizeStart = ImportMetrics.start(itemMetrics);
+            JSONObject json = this.resizeItem(metadata, directory);
+            ImportMetrics.stop(itemMetrics, ImportMetrics.RESIZE, resizeStart);
+            if (json != null) {
+                return json;
+            }
+        }
+
+        long copyStart = ImportMetrics.start(itemMetrics);
+        // Images are probed from the head of the copy, videos by the thumbnailer's retriever
+        HeaderProbe probe = isVideo ? null : new HeaderProbe();
+        File output = this.copy(metadata, directory, listener, probe);
+        if (itemMetrics != null) {
+            ImportMetrics.stop(itemMetrics, ImportMetrics.COPY, copyStart);
+            itemMetrics.setBytesCopied(output.length());
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("path", output.getPath());
+        json.put("isVideo", isVideo);
+        if (isVideo) {
+            long thumbnailStart = ImportMetrics.start(itemMetrics);
+            VideoThumbnailer.Result video = this.thumbnailer.generate(metadata, output, this.lazyThumbnails ? null : directory);
+            ImportMetrics.stop(itemMetrics, ImportMetrics.THUMBNAIL, thumbnailStart);
+            this.putVideoInfo(json, video, metadata);
+        } else {
+            this.putImageInfo(json, probe, metadata, Uri.fromFile(output), itemMetrics);
+        }
+        return json;
+    }
+
+    /**
+     * Zero-copy mode: keeps read access to the picked item and returns its content uri
+     * with its metadata instead of duplicating its bytes into the app storage. Only the
+     * video thumbnails are written, to directory.
+     */
+    JSONObject referenceItem(MediaItemMetadata metadata, OutputLayout.Directory directory, ImportMetrics.Item itemMetrics) throws JSONException {
+        Uri uri = metadata.uri;
+        try {
+            this.resolver.takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } catch (SecurityException e) {
+            // Not every provider grants persistable permissions, the uri stays readable for this session
+            Log.d("ImagePicker", "referenceItem: no persistable permission for " + uri);
+        }
+
+        boolean isVideo = metadata.isVideo();
+        JSONObject json = new JSONObject();
+        json.put("path", uri.toString());
+        json.put("isVideo", isVideo);
+        json.put("mimeType", metadata.mimeType);
+        json.put("name", metadata.getFileName());
+        json.put("size", metadata.size);
+
+        if (isVideo) {
+            long thumbnailStart = ImportMetrics.start(itemMetrics);
+            VideoThumbnailer.Result video = this.thumbnailer.generate(metadata, null, this.lazyThumbnails ? null : directory);
+            ImportMetrics.stop(itemMetrics, ImportMetrics.THUMBNAIL, thumbnailStart);
+            this.putVideoInfo(json, video, metadata);
+        } else {
+            // Nothing is copied, a read of the head replaces a bounds decode of the whole image
+            long probeStart = ImportMetrics.start(itemMetrics);
+            HeaderProbe probe;
+            try {
+                probe = HeaderProbe.read(this.resolver, uri);
+            } catch (IOException e) {
+                Log.e("ImagePicker", "referenceItem: " + e.getMessage());
+                probe = new HeaderProbe();
+            }
+            ImportMetrics.stop(itemMetrics, ImportMetrics.PROBE, probeStart);
+            this.putImageInfo(json, probe, metadata, uri, itemMetrics);
+        }
+        return json;
+    }
+
+    /**
+     * Upload mode: streams the item to the upload endpoint instead of copying it, images
+     * are probed from the first chunk. Only video thumbnails are written, to directory.
+     *
+     * @param uploadId identifies the item to the server, see ChunkedUploader
+     * @param resume true when the job is resumed, the server may hold part of the item
+     */
+    JSONObject uploadItem(MediaItemMetadata metadata, ChunkedUploader uploader, String uploadId, boolean resume, OutputLayout.Directory directory, MediaCopier.ProgressListener listener, ImportMetrics.Item itemMetrics) throws JSONException, IOException, InterruptedException {
+        boolean isVideo = metadata.isVideo();
+        long uploadStart = ImportMetrics.start(itemMetrics);
+        HeaderProbe probe = isVideo ? null : new HeaderProbe();
+        JSONObject json = uploader.upload(metadata, uploadId, resume, listener, probe);
+        ImportMetrics.stop(itemMetrics, ImportMetrics.UPLOAD, uploadStart);
+
+        if (isVideo) {
+            long thumbnailStart = ImportMetrics.start(itemMetrics);
+            VideoThumbnailer.Result video = this.thumbnailer.generate(metadata, null, this.lazyThumbnails ? null : directory);
+            ImportMetrics.stop(itemMetrics, ImportMetrics.THUMBNAIL, thumbnailStart);
+            this.putVideoInfo(json, video, metadata);
+        } else {
+            this.putImageInfo(json, probe, metadata, metadata.uri, itemMetrics);
+        }
+        return json;
+    }
+
+    /**
+     * Writes the resized and recompressed image instead of a copy of the original.
+     * Returns null when the image cannot be decoded, so that it is copied as is.
+     */
+    private JSONObject resizeItem(MediaItemMetadata metadata, OutputLayout.Directory directory) throws JSONException, IOException {
+        File output = directory.reserve(this.resizer.getOutputName(metadata.getFileName()));
+        Size size;
+        try {
+            size = this.resizer.resize(this.resolver, metadata, output);
+        } catch (IOException e) {
+            Log.e("ImagePicker", "resizeItem: " + e.getMessage());
+            output.delete();
+            return null;
+        }
+        JSONObject json = new JSONObject();
+        json.put("path", output.getPath());
+        json.put("isVideo", false);
+        // The output is written upright, the original is reported as it is displayed too
+        boolean transposed = metadata.orientation == 90 || metadata.orientation == 270;
+        json.put("width", size.getWidth());
+        json.put("height", size.getHeight());
+        json.put("rotation", 0);
+        json.put("originalWidth", transposed ? metadata.height : metadata.width);
+        json.put("originalHeight", transposed ? metadata.width : metadata.height);
+        json.put("originalRotation", metadata.orientation);
+        return json;
+    }
+
+    /**
+     * Copies the item under its display name, numbered when another item of the directory
+     * already has it.
+     */
+    private File copy(MediaItemMetadata metadata, OutputLayout.Directory directory, MediaCopier.ProgressListener listener, HeaderProbe probe) throws IOException {
+        File output = directory.reserve(metadata.getFileName());
+        try {
+            this.copier.copy(metadata.uri, output, listener, probe);
+        } catch (IOException | RuntimeException e) {
+            // Gives the reserved name back
+            output.delete();
+            throw e;
+        }
+        return output;
+    }
+
+    /**
+     * Adds the dimensions as displayed, rotation and capture date of an image to its result.
+     * They come from the probed header, then from the provider, and only when neither knows
+     * the dimensions from a bounds decode of source.
+     */
+    private void putImageInfo(JSONObject json, HeaderProbe probe, MediaItemMetadata metadata, Uri source, ImportMetrics.Item itemMetrics) throws JSONException {
+        int width = probe.hasDimensions() ? probe.width : metadata.width;
+        int height = probe.hasDimensions() ? probe.height : metadata.height;
+        boolean probed = probe.orientation != ExifInterface.ORIENTATION_UNDEFINED || probe.rotation != 0;
+        int rotation = probed ? probe.getRotation() : metadata.orientation;
+        if (width <= 0 || height <= 0) {
+            long decodeStart = ImportMetrics.start(itemMetrics);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            try (InputStream input = this.resolver.openInputStream(source)) {
+                BitmapFactory.decodeStream(input, null, options);
+            } catch (IOException e) {
+                Log.e("ImagePicker", "putImageInfo: " + e.getMessage());
+            }
+            width = options.outWidth;
+            height = options.outHeight;
+            ImportMetrics.stop(itemMetrics, ImportMetrics.PROBE, decodeStart);
+        }
+        long jsonStart = ImportMetrics.start(itemMetrics);
+        boolean transposed = rotation == 90 || rotation == 270;
+        json.put("width", transposed ? height : width);
+        json.put("height", transposed ? width : height);
+        json.put("rotation", rotation);
+        if (probe.captureDate != null) {
+            json.put("captureDate", probe.captureDate);
+        }
+        ImportMetrics.stop(itemMetrics, ImportMetrics.JSON_BUILD, jsonStart);
+    }
+
+    /**
+     * Adds the thumbnail, dimensions as displayed, duration, rotation and capture date read
+     * by the thumbnailer's retriever to the result of a video.
+     */
+    private void putVideoInfo(JSONObject json, VideoThumbnailer.Result video, MediaItemMetadata metadata) throws JSONException {
+        boolean known = video.width > 0 && video.height > 0;
+        boolean transposed = video.rotation == 90 || video.rotation == 270;
+        // The provider reports the stored dimensions
+        json.put("width", known ? video.width : (transposed ? metadata.height : metadata.width));
+        json.put("height", known ? video.height : (transposed ? metadata.width : metadata.height));
+        json.put("thumbnail", video.thumbnail);
+        json.put("duration", video.duration);
+        json.put("rotation", video.rotation);
+        if (video.captureDate != null) {
+            json.put("captureDate", video.captureDate);
+        }
+    }
+}
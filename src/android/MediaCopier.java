@@ -0,0 +1,176 @@
+package com.spoon.imagepicker;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Copies picked items into the app storage.
+ *
+ * Seekable sources (regular files behind most providers) are copied with
+ * FileChannel.transferTo, which lets the kernel move the bytes without going through
+ * the Java heap. Non-seekable sources (pipes, network backed providers) fall back to a
+ * buffer that grows while the provider keeps filling it.
+ *
+ * Every copy is written to a temporary file in the destination directory and renamed
+ * once complete, so a half-written file is never returned.
+ *
+ * When a HeaderProbe is given, the head of the file is read into the heap first and
+ * probed on its way to the destination, the rest is copied as above.
+ */
+class MediaCopier {
+    private static final int TRANSFER_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int MIN_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_BUFFER_SIZE = 1024 * 1024;
+    private static final long PROGRESS_INTERVAL = 1024 * 1024;
+
+    interface ProgressListener {
+        /**
+         * @param bytesCopied bytes of the current file written so far
+         * @param totalBytes size of the current file, or -1 when the provider does not know it
+         */
+        void onProgress(long bytesCopied, long totalBytes);
+    }
+
+    private final ContentResolver resolver;
+
+    MediaCopier(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * Copies uri to destination, replacing it if it exists.
+     *
+     * @param probe when not null, parses the head of the file
+     * @return the number of bytes copied
+     */
+    long copy(Uri uri, File destination, ProgressListener listener, HeaderProbe probe) throws IOException {
+        File temp = File.createTempFile(".import", ".part", destination.getParentFile());
+        try {
+            long copied;
+            ParcelFileDescriptor pfd = this.openFileDescriptor(uri);
+            if (pfd != null) {
+                try (ParcelFileDescriptor descriptor = pfd;
+                     FileInputStream input = new FileInputStream(descriptor.getFileDescriptor());
+                     FileOutputStream output = new FileOutputStream(temp)) {
+                    copied = this.copy(input.getChannel(), descriptor.getStatSize(), output.getChannel(), listener, probe);
+                }
+            } else {
+                try (InputStream input = this.resolver.openInputStream(uri);
+                     FileOutputStream output = new FileOutputStream(temp)) {
+                    if (input == null) {
+                        throw new FileNotFoundException("No content for " + uri);
+                    }
+                    ReadableByteChannel channel = Channels.newChannel(input);
+                    long position = this.copyHead(channel, output.getChannel(), probe);
+                    copied = this.copyBuffered(channel, -1, position, output.getChannel(), listener);
+                }
+            }
+            if (!temp.renameTo(destination)) {
+                throw new IOException("Cannot move " + temp + " to " + destination);
+            }
+            return copied;
+        } finally {
+            if (temp.exists()) {
+                temp.delete();
+            }
+        }
+    }
+
+    private ParcelFileDescriptor openFileDescriptor(Uri uri) throws FileNotFoundException {
+        try {
+            return this.resolver.openFileDescriptor(uri, "r");
+        } catch (UnsupportedOperationException e) {
+            // Some providers only implement openInputStream
+            return null;
+        }
+    }
+
+    /**
+     * Copies size bytes of input to output, size being -1 when input is not a regular file.
+     * Package-private so that the benchmarks can drive it with plain file channels.
+     */
+    long copy(FileChannel input, long size, FileChannel output, ProgressListener listener, HeaderProbe probe) throws IOException {
+        long position = this.copyHead(input, output, probe);
+        if (size < 0) {
+            // Not a regular file, transferTo would have nothing to map
+            return this.copyBuffered(input, size, position, output, listener);
+        }
+        while (position < size) {
+            long transferred = input.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, size - position), output);
+            if (transferred <= 0) {
+                // The file was truncated or the provider stopped serving it, read whatever is left
+                input.position(position);
+                return this.copyBuffered(input, size, position, output, listener);
+            }
+            position += transferred;
+            if (listener != null) {
+                listener.onProgress(position, size);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Copies the first HeaderProbe.HEAD_SIZE bytes of input and probes them, leaving input
+     * positioned right after them.
+     *
+     * @return the number of bytes copied, 0 when there is no probe
+     */
+    private long copyHead(ReadableByteChannel input, FileChannel output, HeaderProbe probe) throws IOException {
+        if (probe == null) {
+            return 0;
+        }
+        ByteBuffer head = ByteBuffer.allocate(HeaderProbe.HEAD_SIZE);
+        // Providers can return short reads before the end of the file
+        int read = 0;
+        while (head.hasRemaining() && read != -1) {
+            read = input.read(head);
+        }
+        probe.parse(head.array(), head.position());
+        head.flip();
+        while (head.hasRemaining()) {
+            output.write(head);
+        }
+        return head.limit();
+    }
+
+    private long copyBuffered(ReadableByteChannel input, long size, long position, FileChannel output, ProgressListener listener) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(MIN_BUFFER_SIZE);
+        long lastReported = position;
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            boolean filled = !buffer.hasRemaining();
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                output.write(buffer);
+            }
+            position += read;
+            if (filled && buffer.capacity() < MAX_BUFFER_SIZE) {
+                // The provider keeps up with the buffer, fewer and larger reads are cheaper
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            } else {
+                buffer.clear();
+            }
+            if (listener != null && position - lastReported >= PROGRESS_INTERVAL) {
+                lastReported = position;
+                listener.onProgress(position, size);
+            }
+        }
+        if (listener != null && position != lastReported) {
+            listener.onProgress(position, size);
+        }
+        return position;
+    }
+}
@@ -0,0 +1,313 @@
+package com.spoon.imagepicker;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.BaseColumns;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything the import needs to know about a picked item, resolved with a single
+ * projected query instead of separate getType / size / name round-trips to the provider.
+ */
+class MediaItemMetadata {
+    // SQLite refuses more than 999 bound arguments in a statement
+    private static final int MAX_BATCH_SIZE = 500;
+
+    private static final String MEDIA_DOCUMENTS_AUTHORITY = "com.android.providers.media.documents";
+    // Photo picker items of the device, cloud items have the authority of their provider
+    private static final String LOCAL_PICKER_AUTHORITY = "com.android.providers.media.photopicker";
+
+    // Columns of every MediaStore release, see getMediaProjection
+    private static final String[] MEDIA_PROJECTION = new String[]{
+        BaseColumns._ID,
+        OpenableColumns.DISPLAY_NAME,
+        OpenableColumns.SIZE,
+        MediaStore.MediaColumns.MIME_TYPE,
+        MediaStore.MediaColumns.DATE_MODIFIED,
+        MediaStore.MediaColumns.WIDTH,
+        MediaStore.MediaColumns.HEIGHT
+    };
+
+    private static final String[] DOCUMENT_PROJECTION = new String[]{
+        OpenableColumns.DISPLAY_NAME,
+        OpenableColumns.SIZE,
+        DocumentsContract.Document.COLUMN_MIME_TYPE,
+        DocumentsContract.Document.COLUMN_LAST_MODIFIED
+    };
+
+    private static final String[] OPENABLE_PROJECTION = new String[]{
+        OpenableColumns.DISPLAY_NAME,
+        OpenableColumns.SIZE
+    };
+
+    final Uri uri;
+    String displayName;
+    long size = -1;
+    String mimeType;
+    // Milliseconds since epoch, 0 when unknown
+    long dateModified;
+    int width = -1;
+    int height = -1;
+    // Milliseconds, 0 for images or when unknown
+    long duration;
+    int orientation;
+    // Id of the item in MediaStore when it can be looked up in a batch, else -1
+    private long mediaStoreId = -1;
+
+    MediaItemMetadata(Uri uri) {
+        this.uri = uri;
+    }
+
+    boolean isVideo() {
+        return this.mimeType != null && this.mimeType.startsWith("video/");
+    }
+
+    double getSizeInMb() {
+        return Math.max(this.size, 0) / (1024.0 * 1024.0);
+    }
+
+    /**
+     * Returns a file name for the item, falling back to the last uri segment when the
+     * provider does not expose a display name.
+     */
+    String getFileName() {
+        if (!TextUtils.isEmpty(this.displayName)) {
+            return this.displayName;
+        }
+        String segment = this.uri.getLastPathSegment();
+        return TextUtils.isEmpty(segment) ? String.valueOf(this.uri.hashCode()) : segment.replace('/', '_');
+    }
+
+    /**
+     * Resolves the metadata of every uri, in the same order. Items of a MediaStore collection
+     * are looked up together with one query per collection, the others with one query each.
+     */
+    static List<MediaItemMetadata> resolve(Context context, List<Uri> uris) {
+        ContentResolver resolver = context.getContentResolver();
+        boolean canQueryMediaStore = canQueryMediaStore(context);
+        List<MediaItemMetadata> items = new ArrayList<>();
+        Map<Uri, List<MediaItemMetadata>> collections = new HashMap<>();
+        for (Uri uri : uris) {
+            MediaItemMetadata item = new MediaItemMetadata(uri);
+            items.add(item);
+            Uri collection = getMediaStoreCollection(uri, canQueryMediaStore);
+            if (collection != null) {
+                item.mediaStoreId = getMediaStoreId(uri);
+            }
+            if (collection == null || item.mediaStoreId < 0) {
+                item.query(context);
+            } else {
+                List<MediaItemMetadata> members = collections.get(collection);
+                if (members == null) {
+                    members = new ArrayList<>();
+                    collections.put(collection, members);
+                }
+                members.add(item);
+            }
+        }
+        for (Map.Entry<Uri, List<MediaItemMetadata>> entry : collections.entrySet()) {
+            List<MediaItemMetadata> members = entry.getValue();
+            for (int start = 0; start < members.size(); start += MAX_BATCH_SIZE) {
+                queryBatch(context, entry.getKey(), members.subList(start, Math.min(members.size(), start + MAX_BATCH_SIZE)));
+            }
+        }
+        for (MediaItemMetadata item : items) {
+            if (item.mimeType == null) {
+                item.mimeType = resolver.getType(item.uri);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Returns the MediaStore collection an item can be queried from by id, or null when it has
+     * to be queried through its own uri:
+     *
+     * - content://media/<volume>/<type>/media/<id>, from its own collection
+     * - media documents (image:<id>, video:<id>) picked with ACTION_OPEN_DOCUMENT, and local
+     *   photo picker items, content://media/picker/<user>/<authority>/media/<id>. Their ids are
+     *   MediaStore ids, but only an app holding the read permission can query MediaStore for
+     *   them, the others only have a grant on the picked uri.
+     */
+    private static Uri getMediaStoreCollection(Uri uri, boolean canQueryMediaStore) {
+        List<String> segments = uri.getPathSegments();
+        if (MEDIA_DOCUMENTS_AUTHORITY.equals(uri.getAuthority())) {
+            if (!canQueryMediaStore || segments.size() != 2 || !"document".equals(segments.get(0))) {
+                return null;
+            }
+            String type = segments.get(1).split(":")[0];
+            if ("image".equals(type)) {
+                return MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+            } else if ("video".equals(type)) {
+                return MediaStore.Video.Media.EXTERNAL_CONTENT_URI;
+            }
+            return null;
+        }
+        if (!MediaStore.AUTHORITY.equals(uri.getAuthority()) || segments.isEmpty()) {
+            return null;
+        }
+        if (segments.get(0).startsWith("picker")) {
+            boolean local = segments.size() == 5 && LOCAL_PICKER_AUTHORITY.equals(segments.get(2)) && "media".equals(segments.get(3));
+            // The picker does not tell images from videos, the files collection has both
+            return canQueryMediaStore && local ? MediaStore.Files.getContentUri("external") : null;
+        }
+        if (segments.size() != 4 || !"media".equals(segments.get(2))) {
+            return null;
+        }
+        return uri.buildUpon().path(null)
+            .appendPath(segments.get(0))
+            .appendPath(segments.get(1))
+            .appendPath(segments.get(2))
+            .build();
+    }
+
+    /**
+     * Returns the MediaStore id of an item getMediaStoreCollection found a collection for, or -1.
+     */
+    private static long getMediaStoreId(Uri uri) {
+        String id = uri.getLastPathSegment();
+        if (id != null && MEDIA_DOCUMENTS_AUTHORITY.equals(uri.getAuthority())) {
+            // Document ids are <type>:<id>
+            id = id.substring(id.indexOf(':') + 1);
+        }
+        return id != null && !id.isEmpty() && id.length() < 19 && TextUtils.isDigitsOnly(id) ? Long.parseLong(id) : -1;
+    }
+
+    /**
+     * Returns true when MediaStore can be queried for items the app did not pick itself.
+     */
+    @SuppressLint("InlinedApi")
+    private static boolean canQueryMediaStore(Context context) {
+        String[] permissions = Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+            ? new String[]{Manifest.permission.READ_MEDIA_IMAGES, Manifest.permission.READ_MEDIA_VIDEO}
+            : new String[]{Manifest.permission.READ_EXTERNAL_STORAGE};
+        for (String permission : permissions) {
+            if (context.checkSelfPermission(permission) == PackageManager.PERMISSION_GRANTED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the MediaStore columns to query for the items of uri. DURATION and ORIENTATION
+     * only joined MediaColumns in API 29, before that they exist in the video and image tables
+     * only, and asking a table for a column it does not have fails the whole query.
+     */
+    @SuppressLint("InlinedApi")
+    static String[] getMediaProjection(Uri uri) {
+        List<String> columns = new ArrayList<>(Arrays.asList(MEDIA_PROJECTION));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            columns.add(MediaStore.MediaColumns.DURATION);
+            columns.add(MediaStore.MediaColumns.ORIENTATION);
+        } else if (uri.getPathSegments().contains("images")) {
+            columns.add(MediaStore.Images.ImageColumns.ORIENTATION);
+        } else if (uri.getPathSegments().contains("video")) {
+            columns.add(MediaStore.Video.VideoColumns.DURATION);
+        }
+        return columns.toArray(new String[0]);
+    }
+
+    private static void queryBatch(Context context, Uri collection, List<MediaItemMetadata> members) {
+        Map<Long, MediaItemMetadata> byId = new HashMap<>();
+        List<MediaItemMetadata> duplicates = new ArrayList<>();
+        String[] ids = new String[members.size()];
+        for (int i = 0; i < members.size(); i++) {
+            MediaItemMetadata item = members.get(i);
+            long id = item.mediaStoreId;
+            if (byId.put(id, item) != null) {
+                duplicates.add(item);
+            }
+            ids[i] = String.valueOf(id);
+        }
+        String selection = BaseColumns._ID + " IN (" + TextUtils.join(",", Collections.nCopies(ids.length, "?")) + ")";
+        try (Cursor cursor = context.getContentResolver().query(collection, getMediaProjection(collection), selection, ids, null)) {
+            if (cursor != null) {
+                int idIndex = cursor.getColumnIndex(BaseColumns._ID);
+                while (cursor.moveToNext()) {
+                    MediaItemMetadata item = byId.remove(cursor.getLong(idIndex));
+                    if (item != null) {
+                        item.read(cursor);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            Log.d("ImagePicker", "MediaItemMetadata: batch query failed, " + e.getMessage());
+        }
+        // Rows the collection query did not return are resolved one by one
+        for (MediaItemMetadata item : byId.values()) {
+            item.query(context);
+        }
+        for (MediaItemMetadata item : duplicates) {
+            item.query(context);
+        }
+    }
+
+    private void query(Context context) {
+        ContentResolver resolver = context.getContentResolver();
+        String[] projection = DocumentsContract.isDocumentUri(context, this.uri) ? DOCUMENT_PROJECTION : getMediaProjection(this.uri);
+        try (Cursor cursor = resolver.query(this.uri, projection, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                this.read(cursor);
+                return;
+            }
+        } catch (SecurityException e) {
+            // Reported when the item is opened
+            return;
+        } catch (RuntimeException e) {
+            // The provider does not know some of the projected columns
+            Log.d("ImagePicker", "MediaItemMetadata: " + e.getMessage());
+        }
+        try (Cursor cursor = resolver.query(this.uri, OPENABLE_PROJECTION, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                this.read(cursor);
+            }
+        } catch (RuntimeException e) {
+            Log.d("ImagePicker", "MediaItemMetadata: " + e.getMessage());
+        }
+    }
+
+    @SuppressLint("InlinedApi")
+    private void read(Cursor cursor) {
+        this.displayName = getString(cursor, OpenableColumns.DISPLAY_NAME, this.displayName);
+        this.size = getLong(cursor, OpenableColumns.SIZE, this.size);
+        this.mimeType = getString(cursor, MediaStore.MediaColumns.MIME_TYPE, this.mimeType);
+        // MediaStore stores seconds, documents milliseconds
+        long dateModifiedSeconds = getLong(cursor, MediaStore.MediaColumns.DATE_MODIFIED, -1);
+        if (dateModifiedSeconds >= 0) {
+            this.dateModified = dateModifiedSeconds * 1000;
+        }
+        this.dateModified = getLong(cursor, DocumentsContract.Document.COLUMN_LAST_MODIFIED, this.dateModified);
+        this.width = (int) getLong(cursor, MediaStore.MediaColumns.WIDTH, this.width);
+        this.height = (int) getLong(cursor, MediaStore.MediaColumns.HEIGHT, this.height);
+        this.duration = getLong(cursor, MediaStore.MediaColumns.DURATION, this.duration);
+        this.orientation = (int) getLong(cursor, MediaStore.MediaColumns.ORIENTATION, this.orientation);
+    }
+
+    private static String getString(Cursor cursor, String column, String fallback) {
+        int index = cursor.getColumnIndex(column);
+        return index < 0 || cursor.isNull(index) ? fallback : cursor.getString(index);
+    }
+
+    private static long getLong(Cursor cursor, String column, long fallback) {
+        int index = cursor.getColumnIndex(column);
+        return index < 0 || cursor.isNull(index) ? fallback : cursor.getLong(index);
+    }
+}
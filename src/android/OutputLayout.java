@@ -0,0 +1,175 @@
+package com.spoon.imagepicker;
+
+import android.content.ContentResolver;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides where imported files are written.
+ *
+ * Every import session (one ImportJob) writes to its own directory, and every file name is
+ * reserved atomically with File.createNewFile before the copy renames its temporary file
+ * over it, so items sharing a display name and imports running side by side never
+ * overwrite each other.
+ */
+class OutputLayout {
+    // A week, the ImagePickerSessionMaxAge preference overrides it
+    static final long DEFAULT_MAX_AGE = 7L * 24 * 60 * 60 * 1000;
+
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * A directory files are reserved in. It is only created by the first reserve, so an
+     * import which writes nothing leaves no directory behind.
+     */
+    static class Directory {
+        final File file;
+        // Next number to try by name, only for the names already taken
+        private final Map<String, Integer> counters = new HashMap<>();
+
+        Directory(File file) {
+            this.file = file;
+        }
+
+        /**
+         * Reserves a file named after name, adding " (1)", " (2)"... before the extension
+         * while the name is taken. The returned file exists and is empty.
+         */
+        synchronized File reserve(String name) throws IOException {
+            if (!this.file.exists()) {
+                this.file.mkdirs();
+            }
+            String safeName = name.replace('/', '_').replace('\0', '_');
+            Integer next = this.counters.get(safeName);
+            File file = new File(this.file, safeName);
+            if (next == null && file.createNewFile()) {
+                return file;
+            }
+            int dot = safeName.lastIndexOf('.');
+            String baseName = dot > 0 ? safeName.substring(0, dot) : safeName;
+            String extension = dot > 0 ? safeName.substring(dot) : "";
+            // Only files left by an earlier run of the session are probed past the counter
+            int i = next != null ? next : 1;
+            file = new File(this.file, baseName + " (" + i + ")" + extension);
+            while (!file.createNewFile()) {
+                i++;
+                file = new File(this.file, baseName + " (" + i + ")" + extension);
+            }
+            this.counters.put(safeName, i + 1);
+            return file;
+        }
+    }
+
+    private final File root;
+
+    OutputLayout(File root) {
+        this.root = root;
+    }
+
+    Directory getSessionDirectory(String sessionId) {
+        return new Directory(new File(this.root, sessionId));
+    }
+
+    /**
+     * Deletes the session directories last written to more than maxAge milliseconds ago.
+     * A maxAge of 0 or less keeps every session.
+     */
+    void prune(long maxAge) {
+        File[] sessions = this.root.listFiles();
+        if (sessions == null || maxAge <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File session : sessions) {
+            if (now - session.lastModified() > maxAge) {
+                ImportCache.delete(session);
+            }
+        }
+    }
+
+    /**
+     * Finds the items of a selection which are the same content as an earlier item: the
+     * same uri, or the same size and the same SHA-1. Only items of equal size are hashed.
+     *
+     * @param items metadata by selection index
+     * @param compareContent false to match uris only, when hashing would read every item
+     *                       once more than the import itself (uploads, items not copied)
+     * @return the index of the item each duplicate is a copy of
+     */
+    static Map<Integer, Integer> findDuplicates(ContentResolver resolver, Map<Integer, MediaItemMetadata> items, boolean compareContent) {
+        Map<Integer, Integer> duplicates = new HashMap<>();
+        Map<String, Integer> byUri = new HashMap<>();
+        Map<Long, List<Integer>> bySize = new HashMap<>();
+        List<Integer> indexes = new ArrayList<>(items.keySet());
+        indexes.sort(null);
+        for (int index : indexes) {
+            MediaItemMetadata metadata = items.get(index);
+            Integer original = byUri.get(metadata.uri.toString());
+            if (original != null) {
+                duplicates.put(index, original);
+                continue;
+            }
+            byUri.put(metadata.uri.toString(), index);
+            if (compareContent && metadata.size > 0) {
+                List<Integer> sameSize = bySize.get(metadata.size);
+                if (sameSize == null) {
+                    sameSize = new ArrayList<>();
+                    bySize.put(metadata.size, sameSize);
+                }
+                sameSize.add(index);
+            }
+        }
+
+        for (List<Integer> sameSize : bySize.values()) {
+            if (sameSize.size() < 2) {
+                continue;
+            }
+            Map<String, Integer> byHash = new HashMap<>();
+            for (int index : sameSize) {
+                String hash = hash(resolver, items.get(index));
+                if (hash == null) {
+                    continue;
+                }
+                Integer original = byHash.get(hash);
+                if (original != null) {
+                    duplicates.put(index, original);
+                } else {
+                    byHash.put(hash, index);
+                }
+            }
+        }
+        return duplicates;
+    }
+
+    private static String hash(ContentResolver resolver, MediaItemMetadata metadata) {
+        try (InputStream input = resolver.openInputStream(metadata.uri)) {
+            if (input == null) {
+                return null;
+            }
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] buffer = new byte[HASH_BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            StringBuilder hash = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (IOException | NoSuchAlgorithmException | SecurityException e) {
+            // Not hashable, the item is simply imported on its own
+            Log.e("ImagePicker", "OutputLayout: " + e.getMessage());
+            return null;
+        }
+    }
+}
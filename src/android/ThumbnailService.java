@@ -0,0 +1,267 @@
+package com.spoon.imagepicker;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Base64;
+import android.util.Log;
+import android.util.LruCache;
+import android.util.Size;
+import android.webkit.MimeTypeMap;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates previews of imported items on demand, so the WebView can show a grid of small
+ * images instead of decoding full resolution files in its img tags.
+ *
+ * Thumbnails are generated on a small pool of their own, independent of the imports, and
+ * kept encoded in a memory LRU. Requests for a thumbnail already being generated wait for
+ * it instead of generating it again.
+ */
+class ThumbnailService {
+    interface Callback {
+        /**
+         * @param dataUrl the encoded thumbnail, as a data: url
+         */
+        void onThumbnail(String dataUrl);
+
+        void onError(Exception e);
+    }
+
+    private static final int THREADS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+    private static final int QUALITY = 80;
+    private static final int MAX_CACHE_BYTES = 16 * 1024 * 1024;
+
+    private final Context context;
+    private final ContentResolver resolver;
+    private final LruCache<String, byte[]> cache;
+    // Callbacks of the thumbnails being generated, by key
+    private final Map<String, List<Callback>> inFlight = new HashMap<>();
+    private final ThreadPoolExecutor pool;
+
+    ThumbnailService(Context context) {
+        this.context = context;
+        this.resolver = context.getContentResolver();
+        int maxBytes = (int) Math.min(MAX_CACHE_BYTES, Runtime.getRuntime().maxMemory() / 32);
+        this.cache = new LruCache<String, byte[]>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+        };
+        this.pool = new ThreadPoolExecutor(THREADS, THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the thumbnail of the item at path, a file path or a content or file uri, no
+     * larger than maxEdge and encoded as format ("jpeg", "png" or "webp"). callback is called
+     * on the calling thread when the thumbnail is cached, else on a worker thread.
+     */
+    void request(String path, int maxEdge, String format, Callback callback) {
+        VideoThumbnailer encoder = new VideoThumbnailer(this.context, maxEdge, format, QUALITY);
+        String key = path + "|" + encoder.getSettings();
+        byte[] cached;
+        synchronized (this.inFlight) {
+            // A thumbnail is cached before its generation stops being in flight
+            cached = this.cache.get(key);
+            if (cached == null) {
+                List<Callback> waiting = this.inFlight.get(key);
+                if (waiting != null) {
+                    waiting.add(callback);
+                    return;
+                }
+                waiting = new ArrayList<>();
+                waiting.add(callback);
+                this.inFlight.put(key, waiting);
+            }
+        }
+        if (cached != null) {
+            callback.onThumbnail(toDataUrl(cached, encoder.getMimeType()));
+            return;
+        }
+        try {
+            this.pool.execute(() -> this.generate(key, path, encoder));
+        } catch (RejectedExecutionException e) {
+            // The service was shut down, no worker will ever answer the waiters
+            Log.e("ImagePicker", "ThumbnailService: " + e.getMessage());
+            this.finish(key, null, e);
+        }
+    }
+
+    void clear() {
+        this.cache.evictAll();
+    }
+
+    void shutdown() {
+        this.pool.shutdownNow();
+        this.cache.evictAll();
+    }
+
+    private void generate(String key, String path, VideoThumbnailer encoder) {
+        String dataUrl = null;
+        Exception error = null;
+        try {
+            Uri uri = toUri(path);
+            Bitmap bitmap = this.isVideo(uri) ? encoder.loadFrame(uri) : this.decodeImage(uri, encoder.getMaxEdge());
+            if (bitmap == null) {
+                throw new IOException("Cannot decode " + path);
+            }
+            byte[] bytes;
+            try {
+                bytes = encoder.encode(bitmap);
+            } finally {
+                bitmap.recycle();
+            }
+            this.cache.put(key, bytes);
+            dataUrl = toDataUrl(bytes, encoder.getMimeType());
+        } catch (IOException | RuntimeException e) {
+            Log.e("ImagePicker", "ThumbnailService: " + e.getMessage());
+            error = e;
+        } catch (OutOfMemoryError e) {
+            Log.e("ImagePicker", "ThumbnailService: " + e.getMessage());
+            error = new IOException("Out of memory generating the thumbnail of " + path);
+        } finally {
+            // Waiters are answered whatever went wrong, else they would wait forever
+            this.finish(key, dataUrl, error);
+        }
+    }
+
+    /**
+     * Stops the generation of key being in flight and answers its waiters with dataUrl, or
+     * error when it is null. error is null when an unexpected Error ended the generation.
+     */
+    private void finish(String key, String dataUrl, Exception error) {
+        List<Callback> waiting;
+        synchronized (this.inFlight) {
+            waiting = this.inFlight.remove(key);
+        }
+        if (waiting == null) {
+            return;
+        }
+        if (dataUrl == null && error == null) {
+            error = new IOException("Cannot generate the thumbnail of " + key);
+        }
+        for (Callback callback : waiting) {
+            if (dataUrl != null) {
+                callback.onThumbnail(dataUrl);
+            } else {
+                callback.onError(error);
+            }
+        }
+    }
+
+    /**
+     * Decodes the image at uri scaled to fit maxEdge and displayed upright. The platform
+     * thumbnail is used when the provider keeps one.
+     */
+    private Bitmap decodeImage(Uri uri, int maxEdge) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            try {
+                return this.resolver.loadThumbnail(uri, new Size(maxEdge, maxEdge), null);
+            } catch (IOException | RuntimeException e) {
+                // The provider keeps no thumbnail for this item, decode it
+            }
+        }
+
+        HeaderProbe probe = HeaderProbe.read(this.resolver, uri);
+        int width = probe.width;
+        int height = probe.height;
+        if (!probe.hasDimensions()) {
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            this.decode(uri, bounds);
+            width = bounds.outWidth;
+            height = bounds.outHeight;
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IOException("Cannot decode " + uri);
+        }
+
+        float scale = Math.min(1f, (float) maxEdge / Math.max(width, height));
+        int targetWidth = Math.max(1, Math.round(width * scale));
+        int targetHeight = Math.max(1, Math.round(height * scale));
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = ImageResizer.getSampleSize(width, height, targetWidth, targetHeight);
+        Bitmap bitmap = this.decode(uri, options);
+        if (bitmap == null) {
+            throw new IOException("Cannot decode " + uri);
+        }
+        if (bitmap.getWidth() > targetWidth) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+                bitmap = scaled;
+            }
+        }
+
+        Bitmap oriented = ImageResizer.applyOrientation(bitmap, getOrientation(probe));
+        if (oriented != bitmap) {
+            bitmap.recycle();
+        }
+        return oriented;
+    }
+
+    private Bitmap decode(Uri uri, BitmapFactory.Options options) throws IOException {
+        try (InputStream input = this.resolver.openInputStream(uri)) {
+            if (input == null) {
+                throw new FileNotFoundException("No content for " + uri);
+            }
+            return BitmapFactory.decodeStream(input, null, options);
+        }
+    }
+
+    private boolean isVideo(Uri uri) {
+        String mime = ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())
+            ? this.resolver.getType(uri)
+            : MimeTypeMap.getSingleton().getMimeTypeFromExtension(MimeTypeMap.getFileExtensionFromUrl(uri.toString()).toLowerCase());
+        return mime != null && mime.startsWith("video/");
+    }
+
+    /**
+     * Returns the EXIF orientation of the probed image, HEIF rotations mapped to their EXIF
+     * equivalent.
+     */
+    private static int getOrientation(HeaderProbe probe) {
+        if (probe.orientation != ExifInterface.ORIENTATION_UNDEFINED) {
+            return probe.orientation;
+        }
+        switch (probe.rotation) {
+            case 90:
+                return ExifInterface.ORIENTATION_ROTATE_90;
+            case 180:
+                return ExifInterface.ORIENTATION_ROTATE_180;
+            case 270:
+                return ExifInterface.ORIENTATION_ROTATE_270;
+            default:
+                return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    private static Uri toUri(String path) {
+        return path.startsWith(ContentResolver.SCHEME_CONTENT + ":") || path.startsWith(ContentResolver.SCHEME_FILE + ":")
+            ? Uri.parse(path)
+            : Uri.fromFile(new File(path));
+    }
+
+    private static String toDataUrl(byte[] bytes, String mimeType) {
+        return "data:" + mimeType + ";base64," + Base64.encodeToString(bytes, Base64.NO_WRAP);
+    }
+}
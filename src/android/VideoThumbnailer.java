@@ -0,0 +1,264 @@
+package com.spoon.imagepicker;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.media.MediaMetadataRetriever;
+import android.media.ThumbnailUtils;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+import android.util.Size;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Generates video thumbnails no larger than a maximum edge, trying the cheapest source first:
+ *
+ * 1. the thumbnail the platform already keeps for the item (ContentResolver.loadThumbnail)
+ * 2. a frame decoded straight at the thumbnail size (MediaMetadataRetriever.getScaledFrameAtTime)
+ * 3. ThumbnailUtils.createVideoThumbnail on the copied file
+ *
+ * A single retriever per video also reads its dimensions, rotation, duration and capture date.
+ */
+class VideoThumbnailer {
+    static final int DEFAULT_MAX_EDGE = 512;
+
+    static class Result {
+        // File uri of the thumbnail, empty when none could be written
+        String thumbnail = "";
+        // As displayed, the rotation is already applied
+        int width = -1;
+        int height = -1;
+        int rotation;
+        long duration;
+        // UTC date and time the video was recorded, as yyyy-MM-ddTHH:mm:ssZ
+        String captureDate;
+    }
+
+    private final Context context;
+    private final int maxEdge;
+    private final String format;
+    private final int quality;
+
+    /**
+     * @param maxEdge maximum width and height of the thumbnails
+     * @param format "jpeg", "png" or "webp"
+     * @param quality encoding quality, 0-100
+     */
+    VideoThumbnailer(Context context, int maxEdge, String format, int quality) {
+        this.context = context;
+        this.maxEdge = maxEdge > 0 ? maxEdge : DEFAULT_MAX_EDGE;
+        this.format = format == null ? "jpeg" : format.toLowerCase();
+        this.quality = Math.max(0, Math.min(100, quality));
+    }
+
+    /**
+     * Returns a description of the settings, imports made with different settings cannot
+     * share their thumbnails.
+     */
+    String getSettings() {
+        return this.maxEdge + "@" + this.quality + "." + this.format;
+    }
+
+    /**
+     * Generates the thumbnail of a picked video and writes it to directory.
+     *
+     * @param videoFile the copy of the video, or null when it was not copied
+     * @param directory where the thumbnail is written, or null to only read the metadata
+     *                  and leave the thumbnail to getThumbnail
+     */
+    Result generate(MediaItemMetadata metadata, File videoFile, OutputLayout.Directory directory) {
+        Result result = new Result();
+        Bitmap bitmap = null;
+        try (MediaMetadataRetriever retriever = new MediaMetadataRetriever()) {
+            if (videoFile != null) {
+                retriever.setDataSource(videoFile.getPath());
+            } else {
+                retriever.setDataSource(this.context, metadata.uri);
+            }
+            result.width = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH), -1);
+            result.height = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT), -1);
+            result.rotation = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION), 0);
+            result.duration = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION), 0);
+            result.captureDate = toIsoDate(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DATE));
+            if (result.rotation == 90 || result.rotation == 270) {
+                int width = result.width;
+                result.width = result.height;
+                result.height = width;
+            }
+            if (directory != null) {
+                bitmap = this.loadPlatformThumbnail(metadata.uri);
+                if (bitmap == null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+                    bitmap = retriever.getScaledFrameAtTime(-1, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, this.maxEdge, this.maxEdge);
+                }
+            }
+        } catch (Exception e) {
+            Log.e("ImagePicker", "VideoThumbnailer: " + e.getMessage());
+        }
+        // Also when the retriever failed, there is nowhere to write a thumbnail
+        if (directory == null) {
+            return result;
+        }
+
+        Size size = this.fit(result.width, result.height);
+        if (bitmap == null && videoFile != null) {
+            try {
+                bitmap = ThumbnailUtils.createVideoThumbnail(videoFile, size, null);
+            } catch (IOException e) {
+                Log.e("ImagePicker", "VideoThumbnailer: " + e.getMessage());
+            }
+        }
+        if (bitmap == null) {
+            bitmap = generateColoredBitmap(size, Color.DKGRAY);
+        }
+        result.thumbnail = this.save(bitmap, directory);
+        bitmap.recycle();
+        return result;
+    }
+
+    /**
+     * Loads a frame of the video at uri no larger than the maximum edge, for previews asked
+     * for after the import. Returns null when no frame can be decoded.
+     */
+    Bitmap loadFrame(Uri uri) {
+        Bitmap bitmap = this.loadPlatformThumbnail(uri);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        try (MediaMetadataRetriever retriever = new MediaMetadataRetriever()) {
+            retriever.setDataSource(this.context, uri);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+                return retriever.getScaledFrameAtTime(-1, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, this.maxEdge, this.maxEdge);
+            }
+            Bitmap frame = retriever.getFrameAtTime(-1, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+            if (frame == null) {
+                return null;
+            }
+            Size size = this.fit(frame.getWidth(), frame.getHeight());
+            Bitmap scaled = Bitmap.createScaledBitmap(frame, size.getWidth(), size.getHeight(), true);
+            if (scaled != frame) {
+                frame.recycle();
+            }
+            return scaled;
+        } catch (Exception e) {
+            Log.e("ImagePicker", "VideoThumbnailer: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Encodes bitmap in the thumbnail format and quality.
+     */
+    byte[] encode(Bitmap bitmap) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!bitmap.compress(this.getCompressFormat(), this.quality, out)) {
+            throw new IOException("Cannot encode thumbnail");
+        }
+        return out.toByteArray();
+    }
+
+    int getMaxEdge() {
+        return this.maxEdge;
+    }
+
+    String getMimeType() {
+        return "png".equals(this.format) || "webp".equals(this.format) ? "image/" + this.format : "image/jpeg";
+    }
+
+    private Bitmap loadPlatformThumbnail(Uri uri) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return null;
+        }
+        try {
+            return this.context.getContentResolver().loadThumbnail(uri, new Size(this.maxEdge, this.maxEdge), null);
+        } catch (IOException | RuntimeException e) {
+            // The provider keeps no thumbnail for this item
+            return null;
+        }
+    }
+
+    /**
+     * Scales width x height down to fit the maximum edge, keeping its aspect ratio.
+     */
+    private Size fit(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return new Size(this.maxEdge, this.maxEdge);
+        }
+        float scale = Math.min(1f, (float) this.maxEdge / Math.max(width, height));
+        return new Size(Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)));
+    }
+
+    @SuppressWarnings("deprecation")
+    private Bitmap.CompressFormat getCompressFormat() {
+        if ("png".equals(this.format)) {
+            return Bitmap.CompressFormat.PNG;
+        } else if ("webp".equals(this.format)) {
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+        }
+        return Bitmap.CompressFormat.JPEG;
+    }
+
+    private String getExtension() {
+        return "png".equals(this.format) || "webp".equals(this.format) ? this.format : "jpg";
+    }
+
+    private String save(Bitmap bitmap, OutputLayout.Directory directory) {
+        String filename = "video_thumb_" + UUID.randomUUID().toString() + "." + this.getExtension();
+        File thumbnail;
+        try {
+            thumbnail = directory.reserve(filename);
+        } catch (IOException e) {
+            Log.e("ImagePicker", "VideoThumbnailer: " + e.getMessage());
+            return "";
+        }
+        boolean written;
+        try (FileOutputStream out = new FileOutputStream(thumbnail)) {
+            written = bitmap.compress(this.getCompressFormat(), this.quality, out);
+            out.flush();
+        } catch (Exception e) {
+            Log.e("ImagePicker", "VideoThumbnailer: " + e.getMessage());
+            written = false;
+        }
+        // A partial file would be returned as a thumbnail that does not decode
+        if (!written) {
+            thumbnail.delete();
+            return "";
+        }
+
+        return Uri.fromFile(thumbnail).toString();
+    }
+
+    static Bitmap generateColoredBitmap(Size size, int color) {
+        Bitmap bitmap = Bitmap.createBitmap(size.getWidth(), size.getHeight(), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(color);
+
+        return bitmap;
+    }
+
+    /**
+     * Converts a retriever date, yyyyMMddTHHmmss.SSSZ, to ISO 8601. Containers without a
+     * date report the 1904 epoch of QuickTime.
+     */
+    private static String toIsoDate(String date) {
+        if (date == null || date.length() < 15 || date.charAt(8) != 'T' || date.startsWith("1904")) {
+            return null;
+        }
+        return date.substring(0, 4) + "-" + date.substring(4, 6) + "-" + date.substring(6, 8)
+            + "T" + date.substring(9, 11) + ":" + date.substring(11, 13) + ":" + date.substring(13, 15) + "Z";
+    }
+
+    private static int parseInt(String value, int fallback) {
+        try {
+            return value == null ? fallback : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
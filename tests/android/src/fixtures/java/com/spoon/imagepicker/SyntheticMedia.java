@@ -0,0 +1,150 @@
+package com.spoon.imagepicker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Builds the containers HeaderProbe reads, with a valid head and filler data after it, for
+ * the tests and the benchmarks. The files are not decodable, only their heads are real.
+ */
+final class SyntheticMedia {
+    private SyntheticMedia() {
+    }
+
+    /**
+     * Returns the head of a JPEG: an EXIF segment holding orientation (and captureDate, as
+     * yyyy:MM:dd HH:mm:ss, when not null) followed by a baseline start of frame.
+     */
+    static byte[] jpeg(int width, int height, int orientation, String captureDate) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+
+        // Big endian TIFF: IFD0 holds the orientation and, when dated, a pointer to the EXIF IFD
+        int entries = captureDate != null ? 2 : 1;
+        int ifd0Size = 2 + entries * 12 + 4;
+        int exifIfdOffset = 8 + ifd0Size;
+        int dateOffset = exifIfdOffset + 2 + 12 + 4;
+        ByteBuffer tiff = ByteBuffer.allocate(dateOffset + 20).order(ByteOrder.BIG_ENDIAN);
+        tiff.put((byte) 'M').put((byte) 'M').putShort((short) 42).putInt(8);
+        tiff.putShort((short) entries);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        if (captureDate != null) {
+            tiff.putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(exifIfdOffset);
+        }
+        tiff.putInt(0);
+        if (captureDate != null) {
+            tiff.putShort((short) 1);
+            tiff.putShort((short) 0x9003).putShort((short) 2).putInt(20).putInt(dateOffset);
+            tiff.putInt(0);
+            tiff.put(captureDate.getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+        }
+        byte[] tiffBytes = new byte[tiff.position()];
+        tiff.flip();
+        tiff.get(tiffBytes);
+
+        int app1Length = 2 + 6 + tiffBytes.length;
+        out.write(0xFF);
+        out.write(0xE1);
+        out.write(app1Length >> 8);
+        out.write(app1Length & 0xFF);
+        out.write('E');
+        out.write('x');
+        out.write('i');
+        out.write('f');
+        out.write(0);
+        out.write(0);
+        out.write(tiffBytes, 0, tiffBytes.length);
+
+        // SOF0: length, precision, height, width, one component
+        out.write(0xFF);
+        out.write(0xC0);
+        out.write(0);
+        out.write(11);
+        out.write(8);
+        out.write(height >> 8);
+        out.write(height & 0xFF);
+        out.write(width >> 8);
+        out.write(width & 0xFF);
+        out.write(1);
+        out.write(1);
+        out.write(0x11);
+        out.write(0);
+        return out.toByteArray();
+    }
+
+    static byte[] png(int width, int height) {
+        ByteBuffer buffer = ByteBuffer.allocate(33).order(ByteOrder.BIG_ENDIAN);
+        buffer.putLong(0x89504E470D0A1A0AL);
+        buffer.putInt(13).put("IHDR".getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(width).putInt(height);
+        buffer.put((byte) 8).put((byte) 6).put((byte) 0).put((byte) 0).put((byte) 0);
+        buffer.putInt(0);
+        return buffer.array();
+    }
+
+    /**
+     * Returns the head of an extended WebP, hasExif telling whether it has an EXIF chunk.
+     */
+    static byte[] webp(int width, int height, boolean hasExif) {
+        ByteBuffer buffer = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(22);
+        buffer.put("WEBP".getBytes(StandardCharsets.US_ASCII));
+        buffer.put("VP8X".getBytes(StandardCharsets.US_ASCII)).putInt(10);
+        buffer.put((byte) (hasExif ? 0x08 : 0)).put((byte) 0).put((byte) 0).put((byte) 0);
+        putU24(buffer, width - 1);
+        putU24(buffer, height - 1);
+        return buffer.array();
+    }
+
+    /**
+     * Returns the head of a HEIF whose primary image is width x height, rotated
+     * counterclockwise by quarterTurns.
+     */
+    static byte[] heif(int width, int height, int quarterTurns) {
+        ByteBuffer ispe = ByteBuffer.allocate(20).order(ByteOrder.BIG_ENDIAN);
+        ispe.putInt(20).put("ispe".getBytes(StandardCharsets.US_ASCII)).putInt(0).putInt(width).putInt(height);
+        ByteBuffer irot = ByteBuffer.allocate(9).order(ByteOrder.BIG_ENDIAN);
+        irot.putInt(9).put("irot".getBytes(StandardCharsets.US_ASCII)).put((byte) quarterTurns);
+        int ipcoSize = 8 + ispe.capacity() + irot.capacity();
+        int iprpSize = 8 + ipcoSize;
+        int metaSize = 12 + iprpSize;
+        ByteBuffer buffer = ByteBuffer.allocate(16 + metaSize).order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(16).put("ftyp".getBytes(StandardCharsets.US_ASCII)).put("heic".getBytes(StandardCharsets.US_ASCII)).putInt(0);
+        buffer.putInt(metaSize).put("meta".getBytes(StandardCharsets.US_ASCII)).putInt(0);
+        buffer.putInt(iprpSize).put("iprp".getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(ipcoSize).put("ipco".getBytes(StandardCharsets.US_ASCII));
+        buffer.put(ispe.array()).put(irot.array());
+        return buffer.array();
+    }
+
+    /**
+     * Writes head followed by seeded random bytes up to size bytes.
+     */
+    static File write(File file, byte[] head, long size, long seed) throws IOException {
+        Random random = new Random(seed);
+        byte[] buffer = new byte[64 * 1024];
+        try (OutputStream output = new FileOutputStream(file)) {
+            output.write(head);
+            long written = head.length;
+            while (written < size) {
+                random.nextBytes(buffer);
+                int length = (int) Math.min(buffer.length, size - written);
+                output.write(buffer, 0, length);
+                written += length;
+            }
+        }
+        return file;
+    }
+
+    private static void putU24(ByteBuffer buffer, int value) {
+        buffer.put((byte) (value & 0xFF)).put((byte) ((value >> 8) & 0xFF)).put((byte) ((value >> 16) & 0xFF));
+    }
+}
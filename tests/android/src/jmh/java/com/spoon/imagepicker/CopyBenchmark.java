@@ -0,0 +1,91 @@
+package com.spoon.imagepicker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies one large synthetic file with MediaCopier and with the loop the plugin used before
+ * it, a 1 KB buffer over plain streams.
+ *
+ * - legacyLoop: the former copyFileToInternalStorage loop
+ * - transferTo: MediaCopier on a seekable source, a regular file behind the provider
+ * - buffered: MediaCopier on a stream, a pipe or network backed provider
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CopyBenchmark {
+    @Param({"16", "128"})
+    public int sizeMb;
+
+    private final MediaCopier copier = new MediaCopier(null);
+    private File source;
+    private File destination;
+
+    @Setup(Level.Trial)
+    public void createSource() throws IOException {
+        this.source = SyntheticMedia.write(Files.createTempFile("copy-benchmark", ".mp4").toFile(), new byte[0], this.sizeMb * 1024L * 1024, this.sizeMb);
+        this.destination = Files.createTempFile("copy-benchmark", ".part").toFile();
+    }
+
+    @Benchmark
+    public long legacyLoop() throws IOException {
+        long copied = 0;
+        try (InputStream input = new FileInputStream(this.source);
+             OutputStream output = new FileOutputStream(this.destination)) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+                copied += read;
+            }
+        }
+        return copied;
+    }
+
+    @Benchmark
+    public long transferTo() throws IOException {
+        try (FileInputStream input = new FileInputStream(this.source);
+             FileOutputStream output = new FileOutputStream(this.destination)) {
+            return this.copier.copy(input.getChannel(), this.source.length(), output.getChannel(), null, null);
+        }
+    }
+
+    @Benchmark
+    public long buffered() throws IOException {
+        try (FileInputStream input = new FileInputStream(this.source);
+             FileOutputStream output = new FileOutputStream(this.destination)) {
+            // A size of -1 is what a pipe reports, MediaCopier reads it through its growing buffer
+            return this.copier.copy(input.getChannel(), -1, output.getChannel(), null, null);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() {
+        this.source.delete();
+        this.destination.delete();
+    }
+}
@@ -0,0 +1,119 @@
+package com.spoon.imagepicker;
+
+import android.media.ExifInterface;
+import android.net.Uri;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports a selection of synthetic images or videos through ItemImporter: a name reserved
+ * in the session directory, a copy through MediaCopier, for images the head probed on its
+ * way, and the result JSON. One operation is the whole selection.
+ *
+ * There is no ContentProvider outside Robolectric, so the copier reads the picked files
+ * straight from their channel, and video thumbnails are left out: they depend on the
+ * platform decoders, not on this code.
+ *
+ * Run with gradle jmh, the gc profiler reports the allocation of each selection next to
+ * its throughput (gc.alloc.rate.norm, bytes per selection).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImportBenchmark {
+    private static final long IMAGE_SIZE = 3L * 1024 * 1024;
+    private static final long VIDEO_SIZE = 12L * 1024 * 1024;
+
+    @Param({"1", "10", "100"})
+    public int items;
+
+    @Param({"image", "video"})
+    public String kind;
+
+    private final MediaCopier copier = new MediaCopier(null) {
+        @Override
+        long copy(Uri uri, File destination, ProgressListener listener, HeaderProbe probe) throws IOException {
+            File source = new File(uri.getPath());
+            try (FileInputStream input = new FileInputStream(source);
+                 FileOutputStream output = new FileOutputStream(destination)) {
+                return this.copy(input.getChannel(), source.length(), output.getChannel(), listener, probe);
+            }
+        }
+    };
+    private final VideoThumbnailer thumbnailer = new VideoThumbnailer(null, 0, null, 80) {
+        @Override
+        Result generate(MediaItemMetadata metadata, File videoFile, OutputLayout.Directory directory) {
+            return new Result();
+        }
+    };
+    private final ItemImporter importer = new ItemImporter(null, this.copier, new ImageResizer(0, 0, 100, "jpeg"), this.thumbnailer, true);
+    private final List<MediaItemMetadata> selection = new ArrayList<>();
+    private File root;
+    private OutputLayout.Directory session;
+
+    @Setup(Level.Trial)
+    public void createSelection() throws IOException {
+        this.root = Files.createTempDirectory("import-benchmark").toFile();
+        File picked = new File(this.root, "picked");
+        picked.mkdirs();
+        boolean isImage = "image".equals(this.kind);
+        for (int i = 0; i < this.items; i++) {
+            byte[] head = isImage ? SyntheticMedia.jpeg(4032, 3024, ExifInterface.ORIENTATION_ROTATE_90, "2024:05:17 10:42:07") : new byte[0];
+            File source = SyntheticMedia.write(new File(picked, i + (isImage ? ".jpg" : ".mp4")), head, isImage ? IMAGE_SIZE : VIDEO_SIZE, i);
+            MediaItemMetadata metadata = new MediaItemMetadata(Uri.fromFile(source));
+            // Every item gets the same name, like the IMG_0001.jpg of two cameras
+            metadata.displayName = isImage ? "IMG_0001.jpg" : "VID_0001.mp4";
+            metadata.mimeType = isImage ? "image/jpeg" : "video/mp4";
+            metadata.size = source.length();
+            this.selection.add(metadata);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createSession() {
+        this.session = new OutputLayout.Directory(new File(this.root, "session"));
+    }
+
+    @Benchmark
+    public void importSelection(Blackhole blackhole) throws IOException, JSONException {
+        for (MediaItemMetadata metadata : this.selection) {
+            blackhole.consume(this.importer.importItem(metadata, this.session, null, null));
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteSession() {
+        ImportCache.delete(this.session.file);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSelection() {
+        ImportCache.delete(this.root);
+    }
+}
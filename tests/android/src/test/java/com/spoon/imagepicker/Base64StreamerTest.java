@@ -0,0 +1,88 @@
+package com.spoon.imagepicker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Base64StreamerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void streamsChunksWhichJoinToTheEncodingOfTheItem() throws IOException {
+        File source = SyntheticMedia.write(this.folder.newFile("video.mp4"), new byte[0], 2 * Base64Streamer.CHUNK_SIZE + 5, 1);
+        List<String> chunks = new ArrayList<>();
+        List<Boolean> last = new ArrayList<>();
+
+        int count;
+        try (InputStream input = new FileInputStream(source)) {
+            count = Base64Streamer.stream(input, (sequence, data, isLast) -> {
+                assertEquals(chunks.size(), sequence);
+                chunks.add(data);
+                last.add(isLast);
+            });
+        }
+
+        assertEquals(3, count);
+        assertEquals(3, chunks.size());
+        assertFalse(last.get(0));
+        assertFalse(last.get(1));
+        assertTrue(last.get(2));
+        assertEquals(Base64.getEncoder().encodeToString(Files.readAllBytes(source.toPath())), String.join("", chunks));
+    }
+
+    @Test
+    public void marksTheLastFullChunkAsLast() throws IOException {
+        byte[] content = new byte[Base64Streamer.CHUNK_SIZE];
+        List<Boolean> last = new ArrayList<>();
+
+        int count = Base64Streamer.stream(new ByteArrayInputStream(content), (sequence, data, isLast) -> last.add(isLast));
+
+        assertEquals(1, count);
+        assertTrue(last.get(0));
+    }
+
+    @Test
+    public void streamsASingleEmptyChunkForAnEmptyItem() throws IOException {
+        List<String> chunks = new ArrayList<>();
+
+        int count = Base64Streamer.stream(new ByteArrayInputStream(new byte[0]), (sequence, data, isLast) -> {
+            assertTrue(isLast);
+            chunks.add(data);
+        });
+
+        assertEquals(1, count);
+        assertEquals("", chunks.get(0));
+    }
+
+    @Test
+    public void writesTheSidecarThroughATemporaryFile() throws IOException {
+        File source = SyntheticMedia.write(this.folder.newFile("photo.jpg"), new byte[0], Base64Streamer.CHUNK_SIZE + 1, 2);
+        File directory = this.folder.newFolder("session");
+        File sidecar = new File(directory, "photo.jpg.b64");
+
+        try (InputStream input = new FileInputStream(source)) {
+            Base64Streamer.writeSidecar(input, sidecar);
+        }
+
+        String encoded = new String(Files.readAllBytes(sidecar.toPath()), StandardCharsets.US_ASCII);
+        assertArrayEquals(Files.readAllBytes(source.toPath()), Base64.getDecoder().decode(encoded));
+        assertArrayEquals(new String[]{"photo.jpg.b64"}, directory.list());
+    }
+}
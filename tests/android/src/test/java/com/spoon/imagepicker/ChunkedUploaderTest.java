@@ -0,0 +1,156 @@
+package com.spoon.imagepicker;
+
+import android.app.Application;
+import android.net.Uri;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ChunkedUploaderTest {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Application application;
+    private FakeMediaProvider provider;
+    private FakeUploadServer server;
+    private ChunkedUploader uploader;
+
+    @Before
+    public void setUp() throws IOException, JSONException {
+        this.application = RuntimeEnvironment.getApplication();
+        this.provider = FakeMediaProvider.register(FakeMediaProvider.AUTHORITY);
+        this.server = new FakeUploadServer();
+        JSONObject params = new JSONObject();
+        params.put("url", this.server.getUrl());
+        params.put("chunkSize", CHUNK_SIZE / 1024);
+        this.uploader = new ChunkedUploader(this.application.getContentResolver(), params);
+    }
+
+    @After
+    public void tearDown() {
+        this.uploader.shutdown();
+        this.server.stop();
+    }
+
+    @Test
+    public void uploadsAnItemInChunks() throws Exception {
+        File source = this.file("video.mp4", 3 * CHUNK_SIZE + 100);
+
+        JSONObject result = this.uploader.upload(this.resolve("1", source), "job-0", false, null, null);
+
+        assertTrue(result.getBoolean("uploaded"));
+        assertEquals(FakeUploadServer.RESULT, result.getString("response"));
+        assertEquals(source.length(), result.getLong("size"));
+        assertEquals(4, this.server.ranges.size());
+        assertEquals("bytes " + (3 * CHUNK_SIZE) + "-" + (source.length() - 1) + "/" + source.length(), this.server.ranges.get(3));
+        assertArrayEquals(Files.readAllBytes(source.toPath()), this.server.getReceived("job-0"));
+    }
+
+    @Test
+    public void resumesAfterTheBytesTheServerHolds() throws Exception {
+        File source = this.file("video.mp4", 3 * CHUNK_SIZE + 100);
+        byte[] content = Files.readAllBytes(source.toPath());
+        // Not on a chunk boundary, as when a chunk of the previous run was cut short
+        int held = CHUNK_SIZE + 1000;
+        this.server.hold("job-0", content, held);
+        long[] progress = new long[1];
+
+        JSONObject result = this.uploader.upload(this.resolve("1", source), "job-0", true, (bytes, total) -> progress[0] = bytes, null);
+
+        assertEquals(FakeUploadServer.RESULT, result.getString("response"));
+        assertEquals("bytes */" + source.length(), this.server.ranges.get(0));
+        // Chunks in flight arrive in any order
+        assertTrue(this.server.ranges.contains("bytes " + held + "-" + (held + CHUNK_SIZE - 1) + "/" + source.length()));
+        // The status request and the two chunks after the held bytes
+        assertEquals(3, this.server.ranges.size());
+        assertEquals(source.length(), progress[0]);
+        assertArrayEquals(content, this.server.getReceived("job-0"));
+    }
+
+    @Test
+    public void sendsNothingOfAnItemTheServerHoldsEntirely() throws Exception {
+        File source = this.file("photo.jpg", CHUNK_SIZE + 100);
+        byte[] content = Files.readAllBytes(source.toPath());
+        this.server.hold("job-0", content, content.length);
+
+        JSONObject result = this.uploader.upload(this.resolve("1", source), "job-0", true, null, null);
+
+        assertEquals(200, result.getInt("status"));
+        assertEquals(FakeUploadServer.RESULT, result.getString("response"));
+        assertEquals(Collections.singletonList("bytes */" + source.length()), this.server.ranges);
+    }
+
+    @Test
+    public void finishesAnItemTheServerHoldsWithoutSendingAnEmptyChunk() throws Exception {
+        File source = this.file("photo.jpg", CHUNK_SIZE + 100);
+        byte[] content = Files.readAllBytes(source.toPath());
+        this.server.hold("job-0", content, content.length);
+        this.server.completesOnStatus = false;
+
+        JSONObject result = this.uploader.upload(this.resolve("1", source), "job-0", true, null, null);
+
+        assertTrue(result.getBoolean("uploaded"));
+        assertEquals(308, result.getInt("status"));
+        assertEquals(source.length(), result.getLong("size"));
+        assertEquals(Collections.singletonList("bytes */" + source.length()), this.server.ranges);
+    }
+
+    @Test
+    public void uploadsAnEmptyItemWithASingleStatusRequest() throws Exception {
+        File source = this.file("video.mp4", 0);
+
+        JSONObject result = this.uploader.upload(this.resolve("1", source), "job-0", false, null, null);
+
+        assertEquals(200, result.getInt("status"));
+        assertEquals(FakeUploadServer.RESULT, result.getString("response"));
+        assertEquals(0, result.getLong("size"));
+        assertEquals(Collections.singletonList("bytes */0"), this.server.ranges);
+    }
+
+    @Test
+    public void startsOverWhenTheServerHoldsNothing() throws Exception {
+        File source = this.file("photo.jpg", CHUNK_SIZE + 100);
+
+        this.uploader.upload(this.resolve("1", source), "job-0", true, null, null);
+
+        assertEquals("bytes 0-" + (CHUNK_SIZE - 1) + "/" + source.length(), this.server.ranges.get(1));
+        assertArrayEquals(Files.readAllBytes(source.toPath()), this.server.getReceived("job-0"));
+    }
+
+    @Test
+    public void readsTheAcknowledgedLengthFromTheRangeHeader() {
+        assertEquals(100, ChunkedUploader.getResumeOffset("bytes=0-99"));
+        assertEquals(0, ChunkedUploader.getResumeOffset(null));
+        assertEquals(0, ChunkedUploader.getResumeOffset("bytes=10-99"));
+        assertEquals(0, ChunkedUploader.getResumeOffset("bytes=0-"));
+    }
+
+    private File file(String name, long size) throws IOException {
+        return SyntheticMedia.write(new File(this.folder.getRoot(), name), new byte[0], size, size);
+    }
+
+    private MediaItemMetadata resolve(String id, File file) {
+        Uri uri = this.provider.add(id, file.getName(), file.getName().endsWith(".mp4") ? "video/mp4" : "image/jpeg", file);
+        return MediaItemMetadata.resolve(this.application, Collections.singletonList(uri)).get(0);
+    }
+}
@@ -0,0 +1,168 @@
+package com.spoon.imagepicker;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.BaseColumns;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+
+import org.robolectric.Robolectric;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves files of the test as picked items, under its own authority or MediaStore's. Every
+ * query is recorded, so tests can tell how many round-trips the code under test made.
+ */
+public class FakeMediaProvider extends ContentProvider {
+    static final String AUTHORITY = "com.spoon.imagepicker.test";
+
+    private static final String[] DEFAULT_PROJECTION = new String[]{
+        OpenableColumns.DISPLAY_NAME,
+        OpenableColumns.SIZE
+    };
+
+    static class Item {
+        final String id;
+        final String name;
+        final String mimeType;
+        final File file;
+        long dateModified;
+        // Reported instead of the file length when not null
+        Long size;
+
+        Item(String id, String name, String mimeType, File file) {
+            this.id = id;
+            this.name = name;
+            this.mimeType = mimeType;
+            this.file = file;
+        }
+    }
+
+    private final Map<String, Item> items = new LinkedHashMap<>();
+    // Authority the provider was registered under, see register
+    private String authority = AUTHORITY;
+    final List<Uri> queries = new ArrayList<>();
+    // Uris whose files cannot be opened anymore, as after a revoked grant
+    final List<Uri> revoked = new ArrayList<>();
+
+    /**
+     * Registers a provider under authority, MediaStore.AUTHORITY to stand in for MediaStore.
+     */
+    static FakeMediaProvider register(String authority) {
+        FakeMediaProvider provider = Robolectric.setupContentProvider(FakeMediaProvider.class, authority);
+        provider.authority = authority;
+        return provider;
+    }
+
+    /**
+     * Adds an item and returns its uri, content://<authority>/media/<id>, or the uri of a
+     * MediaStore image, content://media/external/images/media/<id>, when the provider stands
+     * in for MediaStore.
+     */
+    Uri add(String id, String name, String mimeType, File file) {
+        return this.add(new Item(id, name, mimeType, file));
+    }
+
+    Uri add(Item item) {
+        this.items.put(item.id, item);
+        return this.getUri(item.id);
+    }
+
+    Uri getUri(String id) {
+        Uri.Builder builder = new Uri.Builder().scheme("content").authority(this.authority);
+        if (MediaStore.AUTHORITY.equals(this.authority)) {
+            builder.appendPath("external").appendPath("images");
+        }
+        return builder.appendPath("media").appendPath(id).build();
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        this.queries.add(uri);
+        String[] columns = projection != null ? projection : DEFAULT_PROJECTION;
+        // Collection queries select their rows with _id IN (?, ...)
+        List<String> ids = selectionArgs != null ? Arrays.asList(selectionArgs) : Arrays.asList(uri.getLastPathSegment());
+        MatrixCursor cursor = new MatrixCursor(columns);
+        for (String id : ids) {
+            Item item = this.items.get(id);
+            if (item == null) {
+                continue;
+            }
+            Object[] row = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                row[i] = getColumn(item, columns[i]);
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        Item item = this.items.get(uri.getLastPathSegment());
+        return item != null ? item.mimeType : null;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        Item item = this.items.get(uri.getLastPathSegment());
+        if (item == null) {
+            throw new FileNotFoundException("No item " + uri);
+        }
+        if (this.revoked.contains(uri)) {
+            throw new SecurityException("Permission revoked for " + uri);
+        }
+        return ParcelFileDescriptor.open(item.file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+    private static Object getColumn(Item item, String column) {
+        switch (column) {
+            case BaseColumns._ID:
+                return Long.parseLong(item.id);
+            case OpenableColumns.DISPLAY_NAME:
+                return item.name;
+            case OpenableColumns.SIZE:
+                return item.size != null ? item.size : item.file.length();
+            case MediaStore.MediaColumns.MIME_TYPE:
+                return item.mimeType;
+            case MediaStore.MediaColumns.DATE_MODIFIED:
+                return item.dateModified / 1000;
+            case DocumentsContract.Document.COLUMN_LAST_MODIFIED:
+                return item.dateModified;
+            default:
+                return null;
+        }
+    }
+}
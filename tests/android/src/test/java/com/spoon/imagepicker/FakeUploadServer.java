@@ -0,0 +1,136 @@
+package com.spoon.imagepicker;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stands in for an upload endpoint on a local port. It reassembles the chunks of each
+ * X-Upload-Id and answers status requests, Content-Range: bytes * / total with no body, the
+ * way the README describes.
+ */
+class FakeUploadServer {
+    static final String RESULT = "{\"stored\":true}";
+
+    private static final Pattern CHUNK_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+    private final HttpServer server;
+    // Chunks received by upload id, by offset
+    private final Map<String, TreeMap<Long, byte[]>> uploads = new HashMap<>();
+    // Content-Range of every request, in the order they arrived
+    final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+    // False to answer a status request 308 even once every byte was received, like a
+    // server which only returns its result for a last chunk
+    volatile boolean completesOnStatus = true;
+
+    FakeUploadServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/upload", this::handle);
+        this.server.start();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/upload";
+    }
+
+    /**
+     * Records the first length bytes of data as received, as if a previous run sent them.
+     */
+    synchronized void hold(String uploadId, byte[] data, int length) {
+        byte[] chunk = new byte[length];
+        System.arraycopy(data, 0, chunk, 0, length);
+        this.getChunks(uploadId).put(0L, chunk);
+    }
+
+    /**
+     * Returns the bytes received for uploadId from its first byte on, up to the first gap.
+     */
+    synchronized byte[] getReceived(String uploadId) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (Map.Entry<Long, byte[]> chunk : this.getChunks(uploadId).entrySet()) {
+            if (chunk.getKey() != output.size()) {
+                break;
+            }
+            output.write(chunk.getValue(), 0, chunk.getValue().length);
+        }
+        return output.toByteArray();
+    }
+
+    void stop() {
+        this.server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String uploadId = exchange.getRequestHeaders().getFirst("X-Upload-Id");
+        String range = exchange.getRequestHeaders().getFirst("Content-Range");
+        byte[] body = readBody(exchange.getRequestBody());
+        this.ranges.add(range);
+
+        Matcher chunk = CHUNK_RANGE.matcher(range);
+        if (!chunk.matches()) {
+            // Status request, bytes */<total>
+            String size = range.substring(range.indexOf('/') + 1);
+            long total = "*".equals(size) ? -1 : Long.parseLong(size);
+            long received = this.getReceived(uploadId).length;
+            if (received == total && this.completesOnStatus) {
+                respond(exchange, 200, RESULT);
+                return;
+            }
+            if (received > 0) {
+                exchange.getResponseHeaders().set("Range", "bytes=0-" + (received - 1));
+            }
+            respond(exchange, 308, "");
+            return;
+        }
+
+        long first = Long.parseLong(chunk.group(1));
+        synchronized (this) {
+            this.getChunks(uploadId).put(first, body);
+        }
+        boolean last = !"*".equals(chunk.group(3)) && Long.parseLong(chunk.group(2)) + 1 == Long.parseLong(chunk.group(3));
+        respond(exchange, 200, last ? RESULT : "");
+    }
+
+    private TreeMap<Long, byte[]> getChunks(String uploadId) {
+        TreeMap<Long, byte[]> chunks = this.uploads.get(uploadId);
+        if (chunks == null) {
+            chunks = new TreeMap<>();
+            this.uploads.put(uploadId, chunks);
+        }
+        return chunks;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static byte[] readBody(InputStream input) throws IOException {
+        try (InputStream body = input) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        }
+    }
+}
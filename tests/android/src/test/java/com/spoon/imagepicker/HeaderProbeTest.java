@@ -0,0 +1,104 @@
+package com.spoon.imagepicker;
+
+import android.media.ExifInterface;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class HeaderProbeTest {
+    @Test
+    public void readsJpegDimensionsOrientationAndCaptureDate() {
+        byte[] head = SyntheticMedia.jpeg(4032, 3024, ExifInterface.ORIENTATION_ROTATE_90, "2024:05:17 10:42:07");
+        HeaderProbe probe = parse(head);
+
+        assertEquals("jpeg", probe.format);
+        assertEquals(4032, probe.width);
+        assertEquals(3024, probe.height);
+        assertEquals(ExifInterface.ORIENTATION_ROTATE_90, probe.orientation);
+        assertEquals(90, probe.getRotation());
+        assertEquals("2024-05-17T10:42:07", probe.captureDate);
+    }
+
+    @Test
+    public void readsJpegWithoutCaptureDate() {
+        HeaderProbe probe = parse(SyntheticMedia.jpeg(640, 480, ExifInterface.ORIENTATION_NORMAL, null));
+
+        assertEquals(640, probe.width);
+        assertEquals(480, probe.height);
+        assertEquals(0, probe.getRotation());
+        assertNull(probe.captureDate);
+    }
+
+    @Test
+    public void readsPng() {
+        HeaderProbe probe = parse(SyntheticMedia.png(1200, 800));
+
+        assertEquals("png", probe.format);
+        assertEquals(1200, probe.width);
+        assertEquals(800, probe.height);
+        assertEquals(ExifInterface.ORIENTATION_NORMAL, probe.orientation);
+    }
+
+    @Test
+    public void leavesTheOrientationOfWebpWithExifUnknown() {
+        HeaderProbe withoutExif = parse(SyntheticMedia.webp(300, 200, false));
+        HeaderProbe withExif = parse(SyntheticMedia.webp(300, 200, true));
+
+        assertEquals(300, withoutExif.width);
+        assertEquals(200, withoutExif.height);
+        assertEquals(ExifInterface.ORIENTATION_NORMAL, withoutExif.orientation);
+        assertEquals(300, withExif.width);
+        assertEquals(ExifInterface.ORIENTATION_UNDEFINED, withExif.orientation);
+    }
+
+    @Test
+    public void readsHeifDimensionsAndRotation() {
+        // One counterclockwise quarter turn is a 270 degrees clockwise rotation
+        HeaderProbe probe = parse(SyntheticMedia.heif(4000, 3000, 1));
+
+        assertEquals("heif", probe.format);
+        assertEquals(4000, probe.width);
+        assertEquals(3000, probe.height);
+        assertEquals(270, probe.getRotation());
+    }
+
+    @Test
+    public void keepsWhatWasReadFromATruncatedHead() {
+        byte[] head = SyntheticMedia.jpeg(640, 480, ExifInterface.ORIENTATION_ROTATE_180, null);
+        // Cut in the middle of the start of frame
+        HeaderProbe probe = parse(Arrays.copyOf(head, head.length - 6));
+
+        assertEquals(ExifInterface.ORIENTATION_ROTATE_180, probe.orientation);
+        assertFalse(probe.hasDimensions());
+    }
+
+    @Test
+    public void ignoresUnknownContainers() {
+        HeaderProbe probe = parse(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        assertNull(probe.format);
+        assertFalse(probe.hasDimensions());
+        assertEquals(ExifInterface.ORIENTATION_UNDEFINED, probe.orientation);
+    }
+
+    @Test
+    public void mapsExifOrientationsToRotations() {
+        assertEquals(90, HeaderProbe.getRotation(ExifInterface.ORIENTATION_TRANSVERSE, 0));
+        assertEquals(180, HeaderProbe.getRotation(ExifInterface.ORIENTATION_FLIP_VERTICAL, 0));
+        assertEquals(270, HeaderProbe.getRotation(ExifInterface.ORIENTATION_TRANSPOSE, 0));
+        assertEquals(90, HeaderProbe.getRotation(ExifInterface.ORIENTATION_UNDEFINED, 90));
+        assertEquals(0, HeaderProbe.getRotation(ExifInterface.ORIENTATION_FLIP_HORIZONTAL, 0));
+    }
+
+    private static HeaderProbe parse(byte[] head) {
+        HeaderProbe probe = new HeaderProbe();
+        // The probe gets a buffer of HEAD_SIZE, longer than the bytes read
+        probe.parse(Arrays.copyOf(head, HeaderProbe.HEAD_SIZE), head.length);
+        return probe;
+    }
+}
@@ -0,0 +1,146 @@
+package com.spoon.imagepicker;
+
+import android.app.Application;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.util.Size;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Decodes and encodes real images, the legacy graphics shadows only pretend to
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@RunWith(RobolectricTestRunner.class)
+public class ImageResizerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Application application;
+    private FakeMediaProvider provider;
+
+    @Before
+    public void setUp() {
+        this.application = RuntimeEnvironment.getApplication();
+        this.provider = FakeMediaProvider.register(FakeMediaProvider.AUTHORITY);
+    }
+
+    @Test
+    public void fitsTheImageInTheMaximumSize() throws IOException {
+        MediaItemMetadata metadata = this.add("photo.png", "image/png", this.image("photo.png", 400, 300, Bitmap.CompressFormat.PNG));
+        File output = this.folder.newFile("photo.jpg");
+
+        Size size = new ImageResizer(100, 100, 80, "jpeg").resize(this.application.getContentResolver(), metadata, output);
+
+        assertEquals(new Size(100, 75), size);
+        assertEquals(new Size(100, 75), bounds(output));
+        assertEquals(400, metadata.width);
+        assertEquals(300, metadata.height);
+        assertEquals(0, metadata.orientation);
+    }
+
+    @Test
+    public void appliesTheLimitsToTheImageAsDisplayed() throws IOException {
+        File source = this.image("photo.jpg", 400, 300, Bitmap.CompressFormat.JPEG);
+        ExifInterface exif = new ExifInterface(source.getPath());
+        exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(ExifInterface.ORIENTATION_ROTATE_90));
+        exif.saveAttributes();
+        MediaItemMetadata metadata = this.add("photo.jpg", "image/jpeg", source);
+        File output = this.folder.newFile("resized.jpg");
+
+        Size size = new ImageResizer(150, 0, 80, "jpeg").resize(this.application.getContentResolver(), metadata, output);
+
+        // Written upright: 300 x 400 as displayed, scaled to 150 wide
+        assertEquals(new Size(150, 200), size);
+        assertEquals(new Size(150, 200), bounds(output));
+        assertEquals(90, metadata.orientation);
+    }
+
+    @Test
+    public void neverEnlargesAnImage() throws IOException {
+        MediaItemMetadata metadata = this.add("small.png", "image/png", this.image("small.png", 80, 60, Bitmap.CompressFormat.PNG));
+        File output = this.folder.newFile("small.webp");
+
+        Size size = new ImageResizer(100, 100, 80, "webp").resize(this.application.getContentResolver(), metadata, output);
+
+        assertEquals(new Size(80, 60), size);
+        assertEquals(new Size(80, 60), bounds(output));
+    }
+
+    @Test(expected = IOException.class)
+    public void failsOnAnImageItCannotDecode() throws IOException {
+        // A valid head over random bytes
+        File source = SyntheticMedia.write(this.folder.newFile("broken.png"), SyntheticMedia.png(400, 300), 10 * 1024, 1);
+        MediaItemMetadata metadata = this.add("broken.png", "image/png", source);
+
+        new ImageResizer(100, 100, 80, "jpeg").resize(this.application.getContentResolver(), metadata, this.folder.newFile("broken.jpg"));
+    }
+
+    @Test
+    public void onlyResizesStillImagesWhenAskedTo() {
+        MediaItemMetadata photo = this.metadata("image/jpeg");
+        MediaItemMetadata gif = this.metadata("image/gif");
+        MediaItemMetadata video = this.metadata("video/mp4");
+
+        assertTrue(new ImageResizer(1024, 0, 100, "jpeg").shouldResize(photo));
+        assertTrue(new ImageResizer(0, 0, 80, "jpeg").shouldResize(photo));
+        assertFalse(new ImageResizer(0, 0, 100, "jpeg").shouldResize(photo));
+        assertFalse(new ImageResizer(1024, 1024, 80, "jpeg").shouldResize(gif));
+        assertFalse(new ImageResizer(1024, 1024, 80, "jpeg").shouldResize(video));
+    }
+
+    @Test
+    public void namesTheOutputAfterItsFormat() {
+        assertEquals("IMG_0001.jpg", new ImageResizer(0, 0, 80, "jpeg").getOutputName("IMG_0001.HEIC"));
+        assertEquals("IMG_0001.webp", new ImageResizer(0, 0, 80, "webp").getOutputName("IMG_0001.jpg"));
+        assertEquals("scan.jpg", new ImageResizer(0, 0, 80, "png").getOutputName("scan"));
+    }
+
+    private File image(String name, int width, int height, Bitmap.CompressFormat format) throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.BLUE);
+        File file = this.folder.newFile(name);
+        try (OutputStream output = new FileOutputStream(file)) {
+            bitmap.compress(format, 90, output);
+        } finally {
+            bitmap.recycle();
+        }
+        return file;
+    }
+
+    private MediaItemMetadata add(String name, String mimeType, File file) {
+        Uri uri = this.provider.add("1", name, mimeType, file);
+        return MediaItemMetadata.resolve(this.application, Collections.singletonList(uri)).get(0);
+    }
+
+    private MediaItemMetadata metadata(String mimeType) {
+        MediaItemMetadata metadata = new MediaItemMetadata(this.provider.getUri("1"));
+        metadata.mimeType = mimeType;
+        return metadata;
+    }
+
+    private static Size bounds(File file) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        return new Size(options.outWidth, options.outHeight);
+    }
+}
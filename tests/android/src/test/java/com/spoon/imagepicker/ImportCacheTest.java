@@ -0,0 +1,152 @@
+package com.spoon.imagepicker;
+
+import android.net.Uri;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ImportCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private ImportCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = this.folder.newFolder("cache");
+        this.cache = new ImportCache(this.directory);
+    }
+
+    @Test
+    public void returnsAnEntryAcrossProcesses() throws IOException, JSONException {
+        File copy = this.write("a", "IMG_0001.jpg", 1024);
+
+        // A new instance stands in for the next process, it reads the saved index
+        ImportCache next = new ImportCache(this.directory);
+        JSONObject result = next.get("a");
+
+        assertNotNull(result);
+        assertEquals(copy.getPath(), result.getString("path"));
+        assertTrue(result.getBoolean("cached"));
+        assertEquals(1, next.getStats().getInt("hits"));
+    }
+
+    @Test
+    public void dropsAnEntryWhoseFileWasDeleted() throws IOException, JSONException {
+        File copy = this.write("a", "IMG_0001.jpg", 1024);
+        copy.delete();
+
+        assertNull(this.cache.get("a"));
+        assertEquals(0, this.cache.getStats().getInt("entries"));
+        assertFalse(new File(this.directory, "a").exists());
+    }
+
+    @Test
+    public void writesAnEntryFromOneImportAtATime() {
+        File entryDirectory = this.cache.getEntryDirectory("a");
+
+        assertNotNull(entryDirectory);
+        assertTrue(entryDirectory.isDirectory());
+        assertNull(this.cache.getEntryDirectory("a"));
+
+        // Released without a put, as when the import failed
+        this.cache.release("a");
+
+        assertFalse(entryDirectory.exists());
+        assertNotNull(this.cache.getEntryDirectory("a"));
+    }
+
+    @Test
+    public void clearLeavesTheEntriesInFlightToTheirImport() throws IOException, JSONException {
+        File stored = this.write("a", "IMG_0001.jpg", 1024);
+        File entryDirectory = this.cache.getEntryDirectory("b");
+
+        this.cache.clear();
+
+        assertFalse(stored.exists());
+        assertTrue(entryDirectory.isDirectory());
+        assertEquals(0, this.cache.getStats().getInt("entries"));
+
+        this.cache.put("b", this.result(this.file(entryDirectory, "IMG_0002.jpg", 1024)));
+        this.cache.release("b");
+
+        assertNotNull(this.cache.get("b"));
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntriesFirst() throws IOException, JSONException {
+        this.write("a", "IMG_0001.jpg", 1024);
+        this.write("b", "IMG_0002.jpg", 1024);
+        this.write("c", "IMG_0003.jpg", 1024);
+        // Makes b the least recently used entry
+        this.cache.get("a");
+        this.cache.get("c");
+        this.cache.configure(2 * 1024, ImportCache.DEFAULT_MAX_AGE);
+
+        this.cache.trim();
+
+        assertNull(this.cache.get("b"));
+        assertNotNull(this.cache.get("a"));
+        assertNotNull(this.cache.get("c"));
+    }
+
+    @Test
+    public void keysAnItemByItsContentAndTheImportSettings() {
+        MediaItemMetadata metadata = new MediaItemMetadata(Uri.parse("content://" + FakeMediaProvider.AUTHORITY + "/media/1"));
+        metadata.size = 1024;
+        metadata.dateModified = 1700000000000L;
+
+        String key = ImportCache.getKey(metadata, "0x0@100.jpeg");
+
+        assertEquals(key, ImportCache.getKey(metadata, "0x0@100.jpeg"));
+        assertNotEquals(key, ImportCache.getKey(metadata, "800x0@80.jpeg"));
+        metadata.dateModified++;
+        assertNotEquals(key, ImportCache.getKey(metadata, "0x0@100.jpeg"));
+        // Without a size the cache cannot tell whether the item changed
+        metadata.size = -1;
+        assertNull(ImportCache.getKey(metadata, "0x0@100.jpeg"));
+    }
+
+    /**
+     * Imports a file of size bytes into the entry key, as ImagePicker does, and returns it.
+     */
+    private File write(String key, String name, int size) throws IOException, JSONException {
+        File entryDirectory = this.cache.getEntryDirectory(key);
+        File file = this.file(entryDirectory, name, size);
+        try {
+            this.cache.put(key, this.result(file));
+        } finally {
+            this.cache.release(key);
+        }
+        return file;
+    }
+
+    private File file(File directory, String name, int size) throws IOException {
+        return SyntheticMedia.write(new File(directory, name), new byte[0], size, size);
+    }
+
+    private JSONObject result(File file) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("path", file.getPath());
+        json.put("isVideo", false);
+        return json;
+    }
+}
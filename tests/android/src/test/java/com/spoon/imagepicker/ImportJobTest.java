@@ -0,0 +1,176 @@
+package com.spoon.imagepicker;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.UriPermission;
+import android.net.Uri;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ImportJobTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Application application;
+    private ContentResolver resolver;
+    private FakeMediaProvider provider;
+    private File jobs;
+    private int nextId = 1;
+
+    @Before
+    public void setUp() throws IOException {
+        this.application = RuntimeEnvironment.getApplication();
+        this.resolver = this.application.getContentResolver();
+        this.provider = FakeMediaProvider.register(FakeMediaProvider.AUTHORITY);
+        this.jobs = this.folder.newFolder("jobs");
+    }
+
+    @Test
+    public void resumesWithTheResultsOfTheCompletedItems() throws IOException, JSONException {
+        List<Uri> uris = this.pick(3);
+        ImportJob job = this.plan(uris);
+        File copy = this.folder.newFile("0.jpg");
+        job.complete(0, this.result(copy.getPath()));
+        // Saved by finish, even within the save interval of complete
+        job.finish(ImportJob.STATE_CANCELLED);
+
+        ImportJob resumed = ImportJob.load(this.jobs, job.id);
+
+        assertNotNull(resumed);
+        assertTrue(resumed.isPlanned());
+        assertEquals(uris, resumed.uris);
+        assertEquals(copy.getPath(), resumed.getResult(0).getString("path"));
+        assertNull(resumed.getResult(1));
+        assertEquals(Arrays.asList(1, 2), new ArrayList<>(resumed.getPending().keySet()));
+    }
+
+    @Test
+    public void importsAgainTheItemsWhoseFileWasDeleted() throws IOException, JSONException {
+        ImportJob job = this.plan(this.pick(2));
+        File copy = this.folder.newFile("0.jpg");
+        job.complete(0, this.result(copy.getPath()));
+        job.complete(1, this.result(this.provider.getUri("2").toString()));
+        job.finish(ImportJob.STATE_CANCELLED);
+        copy.delete();
+
+        ImportJob resumed = ImportJob.load(this.jobs, job.id);
+
+        // A content uri is not a file of the app, it stays completed
+        assertEquals(Collections.singletonList(0), new ArrayList<>(resumed.getPending().keySet()));
+    }
+
+    @Test
+    public void loadsTheLatestJobWithoutAnId() throws IOException {
+        ImportJob older = ImportJob.create(this.jobs, this.pick(1));
+        new File(this.jobs, older.id + ".json").setLastModified(System.currentTimeMillis() - 60 * 1000);
+        ImportJob latest = ImportJob.create(this.jobs, this.pick(1));
+
+        assertEquals(latest.id, ImportJob.load(this.jobs, null).id);
+        assertNull(ImportJob.load(this.jobs, "missing"));
+    }
+
+    @Test
+    public void keepsTheRejectionOfAnItemWhenResumed() throws IOException, JSONException {
+        ImportJob job = this.plan(this.pick(2));
+
+        job.reject(1, ImportPlan.REASON_MAX_PHOTO_SIZE);
+
+        ImportJob resumed = ImportJob.load(this.jobs, job.id);
+        assertEquals(Collections.singletonList(0), resumed.getAccepted());
+        assertEquals(1, resumed.getRejected().length());
+        JSONObject rejection = resumed.getRejected().getJSONObject(0);
+        assertEquals(1, rejection.getInt("index"));
+        assertEquals(ImportPlan.REASON_MAX_PHOTO_SIZE, rejection.getString("reason"));
+    }
+
+    @Test
+    public void releasesTheGrantsOfExpiredJobsWhenPruned() throws IOException {
+        List<Uri> uris = this.pick(2);
+        ImportJob job = ImportJob.create(this.jobs, uris);
+        job.persistPermissions(this.resolver);
+        job.finish(ImportJob.STATE_FAILED);
+        File manifest = new File(this.jobs, job.id + ".json");
+        manifest.setLastModified(System.currentTimeMillis() - ImportJob.MAX_AGE - 1000);
+        ImportJob recent = ImportJob.create(this.jobs, this.pick(1));
+
+        assertEquals(uris.size(), this.resolver.getPersistedUriPermissions().size());
+
+        ImportJob.prune(this.jobs, this.resolver);
+
+        assertFalse(manifest.exists());
+        assertTrue(this.resolver.getPersistedUriPermissions().isEmpty());
+        assertNotNull(ImportJob.load(this.jobs, recent.id));
+    }
+
+    @Test
+    public void leavesTheGrantsItKeptToItsResults() throws IOException {
+        List<Uri> uris = this.pick(1);
+        ImportJob job = ImportJob.create(this.jobs, uris);
+        job.persistPermissions(this.resolver);
+        job.keepPermissions();
+        job.finish(ImportJob.STATE_COMPLETE);
+        new File(this.jobs, job.id + ".json").setLastModified(System.currentTimeMillis() - ImportJob.MAX_AGE - 1000);
+
+        ImportJob.prune(this.jobs, this.resolver);
+
+        List<UriPermission> permissions = this.resolver.getPersistedUriPermissions();
+        assertEquals(1, permissions.size());
+        assertEquals(uris.get(0), permissions.get(0).getUri());
+    }
+
+    @Test
+    public void tellsWhichPathsItsJobsReturned() throws IOException, JSONException {
+        ImportJob job = this.plan(this.pick(1));
+        String path = this.provider.getUri("1").toString();
+        job.complete(0, this.result(path));
+        job.finish(ImportJob.STATE_COMPLETE);
+
+        assertTrue(ImportJob.hasReturned(this.jobs, path));
+        assertFalse(ImportJob.hasReturned(this.jobs, this.provider.getUri("2").toString()));
+    }
+
+    private List<Uri> pick(int count) throws IOException {
+        List<Uri> uris = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String id = String.valueOf(this.nextId++);
+            File file = SyntheticMedia.write(this.folder.newFile(id + ".jpg"), new byte[0], 1024, i);
+            uris.add(this.provider.add(id, id + ".jpg", "image/jpeg", file));
+        }
+        return uris;
+    }
+
+    private ImportJob plan(List<Uri> uris) throws JSONException {
+        ImportJob job = ImportJob.create(this.jobs, uris);
+        job.plan(ImportPlan.create(this.application, uris, 10, 10, 10));
+        return job;
+    }
+
+    private JSONObject result(String path) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("path", path);
+        json.put("isVideo", false);
+        return json;
+    }
+}
@@ -0,0 +1,113 @@
+package com.spoon.imagepicker;
+
+import android.app.Application;
+import android.net.Uri;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ImportPlanTest {
+    private static final long MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Application application;
+    private FakeMediaProvider provider;
+
+    @Before
+    public void setUp() {
+        this.application = RuntimeEnvironment.getApplication();
+        this.provider = FakeMediaProvider.register(FakeMediaProvider.AUTHORITY);
+    }
+
+    @Test
+    public void checksEachItemAgainstTheLimitOfItsType() throws IOException, JSONException {
+        // 3 MB is over the photo limit but within the video one
+        Uri photo = this.add("1", "photo.jpg", "image/jpeg", 3 * MB);
+        Uri video = this.add("2", "video.mp4", "video/mp4", 3 * MB);
+        Uri bigVideo = this.add("3", "big.mp4", "video/mp4", 12 * MB);
+
+        ImportPlan plan = ImportPlan.create(this.application, Arrays.asList(photo, video, bigVideo), 10, 2, 10);
+
+        assertEquals(1, plan.accepted.size());
+        assertEquals(1, plan.accepted.get(0).index);
+        assertEquals("video.mp4", plan.accepted.get(0).metadata.displayName);
+        assertEquals(2, plan.rejected.size());
+        JSONObject photoRejection = plan.rejected.get(0).toJSON();
+        assertEquals(0, photoRejection.getInt("index"));
+        assertEquals(ImportPlan.REASON_MAX_PHOTO_SIZE, photoRejection.getString("reason"));
+        assertEquals("photo.jpg", photoRejection.getString("name"));
+        assertEquals(3 * MB, photoRejection.getLong("size"));
+        assertFalse(photoRejection.getBoolean("isVideo"));
+        assertEquals(ImportPlan.REASON_MAX_VIDEO_SIZE, plan.rejected.get(1).reason);
+        assertTrue(plan.hasSizeRejections());
+    }
+
+    @Test
+    public void rejectsItemsPastTheCountCapWithoutQueryingThem() throws IOException {
+        List<Uri> uris = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            uris.add(this.add(String.valueOf(i), i + ".jpg", "image/jpeg", 1024));
+        }
+
+        ImportPlan plan = ImportPlan.create(this.application, uris, 3, 10, 10);
+
+        assertEquals(3, plan.accepted.size());
+        assertEquals(2, plan.rejected.size());
+        for (ImportPlan.Rejection rejection : plan.rejected) {
+            assertEquals(ImportPlan.REASON_MAX_IMAGE_COUNT, rejection.reason);
+            assertNull(rejection.metadata);
+        }
+        assertFalse(this.provider.queries.contains(uris.get(3)));
+        assertFalse(this.provider.queries.contains(uris.get(4)));
+        assertFalse(plan.hasSizeRejections());
+    }
+
+    @Test
+    public void acceptsItemsOfUnknownSize() throws IOException {
+        FakeMediaProvider.Item item = new FakeMediaProvider.Item("1", "stream.jpg", "image/jpeg", this.folder.newFile());
+        item.size = -1L;
+        Uri uri = this.provider.add(item);
+
+        ImportPlan plan = ImportPlan.create(this.application, Arrays.asList(uri), 10, 1, 1);
+
+        assertEquals(1, plan.accepted.size());
+        assertEquals(0, plan.rejected.size());
+    }
+
+    @Test
+    public void tellsWhetherAnItemCanStillBeRead() throws IOException {
+        Uri readable = this.add("1", "a.jpg", "image/jpeg", 1024);
+        Uri revoked = this.add("2", "b.jpg", "image/jpeg", 1024);
+        this.provider.revoked.add(revoked);
+
+        assertTrue(ImportPlan.isReadable(this.application.getContentResolver(), readable));
+        assertFalse(ImportPlan.isReadable(this.application.getContentResolver(), revoked));
+        assertFalse(ImportPlan.isReadable(this.application.getContentResolver(), this.provider.getUri("404")));
+    }
+
+    private Uri add(String id, String name, String mimeType, long size) throws IOException {
+        File file = SyntheticMedia.write(new File(this.folder.getRoot(), name), new byte[0], size, size);
+        return this.provider.add(id, name, mimeType, file);
+    }
+}
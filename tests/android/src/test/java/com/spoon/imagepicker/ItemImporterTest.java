@@ -0,0 +1,191 @@
+package com.spoon.imagepicker;
+
+import android.app.Application;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.media.ExifInterface;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.shadows.ShadowMediaMetadataRetriever;
+import org.robolectric.shadows.util.DataSource;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Resized images and video thumbnails are encoded for real
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@RunWith(RobolectricTestRunner.class)
+public class ItemImporterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Application application;
+    private FakeMediaProvider provider;
+    private OutputLayout.Directory session;
+    private int nextId = 1;
+
+    @Before
+    public void setUp() throws IOException {
+        this.application = RuntimeEnvironment.getApplication();
+        this.provider = FakeMediaProvider.register(FakeMediaProvider.AUTHORITY);
+        this.session = new OutputLayout.Directory(new File(this.folder.getRoot(), "session"));
+    }
+
+    @Test
+    public void copiesAnImageWithItsSizeAsDisplayed() throws IOException, JSONException {
+        byte[] head = SyntheticMedia.jpeg(4032, 3024, ExifInterface.ORIENTATION_ROTATE_90, "2024:05:17 10:42:07");
+        File source = SyntheticMedia.write(this.folder.newFile("source.jpg"), head, 300 * 1024, 1);
+
+        JSONObject json = this.importer(new ImageResizer(0, 0, 100, "jpeg"), false).importItem(this.add("IMG_0001.jpg", "image/jpeg", source), this.session, null, null);
+
+        File copy = new File(json.getString("path"));
+        assertEquals(new File(this.session.file, "IMG_0001.jpg"), copy);
+        assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(copy.toPath()));
+        assertFalse(json.getBoolean("isVideo"));
+        assertEquals(3024, json.getInt("width"));
+        assertEquals(4032, json.getInt("height"));
+        assertEquals(90, json.getInt("rotation"));
+        assertEquals("2024-05-17T10:42:07", json.getString("captureDate"));
+    }
+
+    @Test
+    public void numbersTheItemsSharingAName() throws IOException, JSONException {
+        ItemImporter importer = this.importer(new ImageResizer(0, 0, 100, "jpeg"), false);
+        byte[] head = SyntheticMedia.jpeg(640, 480, ExifInterface.ORIENTATION_NORMAL, null);
+        File first = SyntheticMedia.write(this.folder.newFile("a.jpg"), head, 10 * 1024, 1);
+        File second = SyntheticMedia.write(this.folder.newFile("b.jpg"), head, 10 * 1024, 2);
+
+        JSONObject firstJson = importer.importItem(this.add("IMG_0001.jpg", "image/jpeg", first), this.session, null, null);
+        JSONObject secondJson = importer.importItem(this.add("IMG_0001.jpg", "image/jpeg", second), this.session, null, null);
+
+        assertEquals("IMG_0001.jpg", new File(firstJson.getString("path")).getName());
+        assertEquals("IMG_0001 (1).jpg", new File(secondJson.getString("path")).getName());
+        assertArrayEquals(Files.readAllBytes(second.toPath()), Files.readAllBytes(new File(secondJson.getString("path")).toPath()));
+    }
+
+    @Test
+    public void givesTheNameBackWhenTheCopyFails() throws IOException, JSONException {
+        File source = SyntheticMedia.write(this.folder.newFile("source.jpg"), new byte[0], 10 * 1024, 1);
+        MediaItemMetadata metadata = this.add("IMG_0001.jpg", "image/jpeg", source);
+        this.provider.revoked.add(metadata.uri);
+
+        try {
+            this.importer(new ImageResizer(0, 0, 100, "jpeg"), false).importItem(metadata, this.session, null, null);
+            fail("The copy of a revoked item succeeded");
+        } catch (IOException | SecurityException e) {
+            // Expected
+        }
+
+        assertEquals(0, this.session.file.list().length);
+    }
+
+    @Test
+    public void writesResizedImagesInTheOutputFormat() throws IOException, JSONException {
+        MediaItemMetadata metadata = this.add("IMG_0001.png", "image/png", this.image("source.png", 400, 300));
+
+        JSONObject json = this.importer(new ImageResizer(100, 100, 80, "jpeg"), false).importItem(metadata, this.session, null, null);
+
+        assertEquals(new File(this.session.file, "IMG_0001.jpg").getPath(), json.getString("path"));
+        assertEquals(100, json.getInt("width"));
+        assertEquals(75, json.getInt("height"));
+        assertEquals(400, json.getInt("originalWidth"));
+        assertEquals(300, json.getInt("originalHeight"));
+    }
+
+    @Test
+    public void referencesAnItemWithoutWritingAnything() throws IOException, JSONException {
+        byte[] head = SyntheticMedia.jpeg(4032, 3024, ExifInterface.ORIENTATION_NORMAL, null);
+        File source = SyntheticMedia.write(this.folder.newFile("source.jpg"), head, 100 * 1024, 1);
+        MediaItemMetadata metadata = this.add("IMG_0001.jpg", "image/jpeg", source);
+
+        JSONObject json = this.importer(new ImageResizer(0, 0, 100, "jpeg"), false).referenceItem(metadata, this.session, null);
+
+        assertEquals(metadata.uri.toString(), json.getString("path"));
+        assertEquals("IMG_0001.jpg", json.getString("name"));
+        assertEquals(source.length(), json.getLong("size"));
+        assertEquals(4032, json.getInt("width"));
+        assertEquals(3024, json.getInt("height"));
+        assertFalse(this.session.file.exists());
+    }
+
+    @Test
+    public void readsTheVideoMetadataAndLeavesTheThumbnailWhenLazy() throws IOException, JSONException {
+        File source = SyntheticMedia.write(this.folder.newFile("source.mp4"), new byte[0], 100 * 1024, 1);
+        String copy = new File(this.session.file, "clip.mp4").getPath();
+        ShadowMediaMetadataRetriever.addMetadata(copy, MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH, "1920");
+        ShadowMediaMetadataRetriever.addMetadata(copy, MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT, "1080");
+        ShadowMediaMetadataRetriever.addMetadata(copy, MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION, "90");
+        ShadowMediaMetadataRetriever.addMetadata(copy, MediaMetadataRetriever.METADATA_KEY_DURATION, "5000");
+
+        JSONObject json = this.importer(new ImageResizer(0, 0, 100, "jpeg"), true).importItem(this.add("clip.mp4", "video/mp4", source), this.session, null, null);
+
+        assertTrue(json.getBoolean("isVideo"));
+        assertEquals(copy, json.getString("path"));
+        assertEquals(1080, json.getInt("width"));
+        assertEquals(1920, json.getInt("height"));
+        assertEquals(90, json.getInt("rotation"));
+        assertEquals(5000, json.getLong("duration"));
+        assertEquals("", json.getString("thumbnail"));
+        assertArrayEquals(new String[]{"clip.mp4"}, this.session.file.list());
+    }
+
+    @Test
+    public void writesTheVideoThumbnailNextToTheCopy() throws IOException, JSONException {
+        File source = SyntheticMedia.write(this.folder.newFile("source.mp4"), new byte[0], 100 * 1024, 1);
+        String copy = new File(this.session.file, "clip.mp4").getPath();
+        Bitmap frame = Bitmap.createBitmap(VideoThumbnailer.DEFAULT_MAX_EDGE, 288, Bitmap.Config.ARGB_8888);
+        ShadowMediaMetadataRetriever.addScaledFrame(DataSource.toDataSource(copy), -1, VideoThumbnailer.DEFAULT_MAX_EDGE, VideoThumbnailer.DEFAULT_MAX_EDGE, frame);
+
+        JSONObject json = this.importer(new ImageResizer(0, 0, 100, "jpeg"), false).importItem(this.add("clip.mp4", "video/mp4", source), this.session, null, null);
+
+        Uri thumbnail = Uri.parse(json.getString("thumbnail"));
+        File file = new File(thumbnail.getPath());
+        assertEquals("file", thumbnail.getScheme());
+        assertEquals(this.session.file, file.getParentFile());
+        assertTrue(file.getName().startsWith("video_thumb_"));
+        assertTrue(file.length() > 0);
+    }
+
+    private ItemImporter importer(ImageResizer resizer, boolean lazyThumbnails) {
+        VideoThumbnailer thumbnailer = new VideoThumbnailer(this.application, 0, "jpeg", 80);
+        return new ItemImporter(this.application.getContentResolver(), new MediaCopier(this.application.getContentResolver()), resizer, thumbnailer, lazyThumbnails);
+    }
+
+    private MediaItemMetadata add(String name, String mimeType, File file) {
+        Uri uri = this.provider.add(String.valueOf(this.nextId++), name, mimeType, file);
+        return MediaItemMetadata.resolve(this.application, Collections.singletonList(uri)).get(0);
+    }
+
+    private File image(String name, int width, int height) throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.GREEN);
+        File file = this.folder.newFile(name);
+        try (OutputStream output = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, output);
+        } finally {
+            bitmap.recycle();
+        }
+        return file;
+    }
+}
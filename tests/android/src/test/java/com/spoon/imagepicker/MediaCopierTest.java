@@ -0,0 +1,135 @@
+package com.spoon.imagepicker;
+
+import android.content.Context;
+import android.media.ExifInterface;
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class MediaCopierTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeMediaProvider provider;
+    private MediaCopier copier;
+    private File output;
+
+    @Before
+    public void setUp() throws IOException {
+        Context context = RuntimeEnvironment.getApplication();
+        this.provider = FakeMediaProvider.register(FakeMediaProvider.AUTHORITY);
+        this.copier = new MediaCopier(context.getContentResolver());
+        this.output = this.folder.newFolder("output");
+    }
+
+    @Test
+    public void copiesTheWholeItem() throws IOException {
+        File source = SyntheticMedia.write(this.folder.newFile("source.jpg"), new byte[0], 5 * 1024 * 1024 + 17, 1);
+        Uri uri = this.provider.add("1", "source.jpg", "image/jpeg", source);
+        File destination = new File(this.output, "copy.jpg");
+
+        long copied = this.copier.copy(uri, destination, null, null);
+
+        assertEquals(source.length(), copied);
+        assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(destination.toPath()));
+    }
+
+    @Test
+    public void probesTheHeadOnItsWayToTheDestination() throws IOException {
+        byte[] head = SyntheticMedia.jpeg(4032, 3024, ExifInterface.ORIENTATION_ROTATE_270, null);
+        File source = SyntheticMedia.write(this.folder.newFile("source.jpg"), head, 300 * 1024, 2);
+        Uri uri = this.provider.add("1", "source.jpg", "image/jpeg", source);
+        File destination = new File(this.output, "copy.jpg");
+        HeaderProbe probe = new HeaderProbe();
+
+        long copied = this.copier.copy(uri, destination, null, probe);
+
+        assertEquals(source.length(), copied);
+        assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(destination.toPath()));
+        assertEquals(4032, probe.width);
+        assertEquals(3024, probe.height);
+        assertEquals(270, probe.getRotation());
+    }
+
+    @Test
+    public void copiesItemsSmallerThanTheProbedHead() throws IOException {
+        byte[] head = SyntheticMedia.png(16, 16);
+        File source = SyntheticMedia.write(this.folder.newFile("small.png"), head, 1000, 3);
+        Uri uri = this.provider.add("1", "small.png", "image/png", source);
+        File destination = new File(this.output, "small.png");
+        HeaderProbe probe = new HeaderProbe();
+
+        long copied = this.copier.copy(uri, destination, null, probe);
+
+        assertEquals(1000, copied);
+        assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(destination.toPath()));
+        assertEquals(16, probe.width);
+    }
+
+    @Test
+    public void reportsProgressUpToTheSize() throws IOException {
+        long size = 9 * 1024 * 1024;
+        File source = SyntheticMedia.write(this.folder.newFile("video.mp4"), new byte[0], size, 4);
+        Uri uri = this.provider.add("1", "video.mp4", "video/mp4", source);
+        List<Long> progress = new ArrayList<>();
+
+        this.copier.copy(uri, new File(this.output, "video.mp4"), (bytesCopied, totalBytes) -> {
+            assertEquals(size, totalBytes);
+            progress.add(bytesCopied);
+        }, null);
+
+        assertTrue(progress.size() > 1);
+        for (int i = 1; i < progress.size(); i++) {
+            assertTrue(progress.get(i) > progress.get(i - 1));
+        }
+        assertEquals(size, (long) progress.get(progress.size() - 1));
+    }
+
+    @Test
+    public void leavesNothingBehindWhenTheItemCannotBeOpened() throws IOException {
+        Uri uri = this.provider.getUri("404");
+        File destination = new File(this.output, "missing.jpg");
+
+        try {
+            this.copier.copy(uri, destination, null, null);
+            fail();
+        } catch (FileNotFoundException e) {
+            // expected
+        }
+
+        assertFalse(destination.exists());
+        assertEquals(0, this.output.list().length);
+    }
+
+    @Test
+    public void replacesAnExistingDestination() throws IOException {
+        File source = SyntheticMedia.write(this.folder.newFile("source.jpg"), new byte[0], 4096, 5);
+        Uri uri = this.provider.add("1", "source.jpg", "image/jpeg", source);
+        File destination = SyntheticMedia.write(new File(this.output, "copy.jpg"), new byte[0], 100000, 6);
+
+        this.copier.copy(uri, destination, null, null);
+
+        assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(destination.toPath()));
+        assertEquals(1, this.output.list().length);
+    }
+}
@@ -0,0 +1,150 @@
+package com.spoon.imagepicker;
+
+import android.Manifest;
+import android.app.Application;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class MediaItemMetadataTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Application application;
+
+    @Before
+    public void setUp() {
+        this.application = RuntimeEnvironment.getApplication();
+    }
+
+    @Test
+    public void resolvesEveryItemInSelectionOrder() throws IOException {
+        FakeMediaProvider provider = FakeMediaProvider.register(FakeMediaProvider.AUTHORITY);
+        FakeMediaProvider.Item photo = new FakeMediaProvider.Item("1", "photo.jpg", "image/jpeg", this.file("photo.jpg", 2048));
+        photo.dateModified = 1700000000000L;
+        Uri photoUri = provider.add(photo);
+        Uri videoUri = provider.add("2", "video.mp4", "video/mp4", this.file("video.mp4", 4096));
+
+        List<MediaItemMetadata> items = MediaItemMetadata.resolve(this.application, Arrays.asList(videoUri, photoUri));
+
+        assertEquals(2, items.size());
+        MediaItemMetadata video = items.get(0);
+        assertEquals(videoUri, video.uri);
+        assertEquals("video.mp4", video.getFileName());
+        assertEquals(4096, video.size);
+        assertEquals("video/mp4", video.mimeType);
+        assertTrue(video.isVideo());
+        MediaItemMetadata image = items.get(1);
+        assertEquals("photo.jpg", image.displayName);
+        assertEquals(2048, image.size);
+        assertEquals("image/jpeg", image.mimeType);
+        assertEquals(1700000000000L, image.dateModified);
+    }
+
+    @Test
+    public void keepsDefaultsForItemsTheProviderDoesNotKnow() {
+        FakeMediaProvider provider = FakeMediaProvider.register(FakeMediaProvider.AUTHORITY);
+        Uri uri = provider.getUri("404");
+
+        MediaItemMetadata item = MediaItemMetadata.resolve(this.application, Collections.singletonList(uri)).get(0);
+
+        assertEquals(-1, item.size);
+        assertNull(item.displayName);
+        assertEquals("404", item.getFileName());
+    }
+
+    @Test
+    public void queriesMediaStoreItemsInOneBatch() throws IOException {
+        shadowOf(this.application).grantPermissions(Manifest.permission.READ_MEDIA_IMAGES);
+        FakeMediaProvider provider = FakeMediaProvider.register(MediaStore.AUTHORITY);
+        List<Uri> uris = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            uris.add(provider.add(String.valueOf(i), "IMG_" + i + ".jpg", "image/jpeg", this.file("IMG_" + i + ".jpg", 100 * i)));
+        }
+
+        List<MediaItemMetadata> items = MediaItemMetadata.resolve(this.application, uris);
+
+        assertEquals(1, provider.queries.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals("IMG_" + (i + 1) + ".jpg", items.get(i).displayName);
+            assertEquals(100 * (i + 1), items.get(i).size);
+        }
+    }
+
+    @Test
+    public void queriesMediaDocumentsFromTheirCollectionWithThePermission() throws IOException {
+        shadowOf(this.application).grantPermissions(Manifest.permission.READ_MEDIA_IMAGES);
+        FakeMediaProvider provider = FakeMediaProvider.register(MediaStore.AUTHORITY);
+        provider.add("5", "a.jpg", "image/jpeg", this.file("a.jpg", 10));
+        provider.add("6", "b.jpg", "image/jpeg", this.file("b.jpg", 20));
+
+        List<MediaItemMetadata> items = MediaItemMetadata.resolve(this.application, Arrays.asList(document("image:5"), document("image:6")));
+
+        assertEquals(1, provider.queries.size());
+        assertEquals(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, provider.queries.get(0));
+        assertEquals("a.jpg", items.get(0).displayName);
+        assertEquals(20, items.get(1).size);
+    }
+
+    @Test
+    public void queriesMediaDocumentsOneByOneWithoutThePermission() {
+        FakeMediaProvider provider = FakeMediaProvider.register(MediaStore.AUTHORITY);
+
+        MediaItemMetadata.resolve(this.application, Arrays.asList(document("image:5"), document("image:6")));
+
+        // Only the picked uris are readable, MediaStore is not queried for them
+        assertEquals(0, provider.queries.size());
+    }
+
+    @Test
+    public void projectsTheColumnsOfTheRunningRelease() {
+        List<String> columns = Arrays.asList(MediaItemMetadata.getMediaProjection(MediaStore.Images.Media.EXTERNAL_CONTENT_URI));
+
+        assertTrue(columns.contains(MediaStore.MediaColumns.DURATION));
+        assertTrue(columns.contains(MediaStore.MediaColumns.ORIENTATION));
+    }
+
+    @Test
+    @Config(sdk = 28)
+    public void projectsOnlyTheColumnsOfTheQueriedTableBeforeQ() {
+        List<String> images = Arrays.asList(MediaItemMetadata.getMediaProjection(MediaStore.Images.Media.EXTERNAL_CONTENT_URI));
+        List<String> videos = Arrays.asList(MediaItemMetadata.getMediaProjection(MediaStore.Video.Media.EXTERNAL_CONTENT_URI));
+
+        assertTrue(images.contains(MediaStore.Images.ImageColumns.ORIENTATION));
+        assertFalse(images.contains(MediaStore.Video.VideoColumns.DURATION));
+        assertTrue(videos.contains(MediaStore.Video.VideoColumns.DURATION));
+        assertFalse(videos.contains(MediaStore.Images.ImageColumns.ORIENTATION));
+    }
+
+    private static Uri document(String documentId) {
+        return new Uri.Builder().scheme("content").authority("com.android.providers.media.documents")
+            .appendPath("document").appendPath(documentId).build();
+    }
+
+    private File file(String name, long size) throws IOException {
+        return SyntheticMedia.write(new File(this.folder.getRoot(), name), new byte[0], size, name.hashCode());
+    }
+}
@@ -0,0 +1,158 @@
+package com.spoon.imagepicker;
+
+import android.app.Application;
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class OutputLayoutTest {
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Application application;
+    private FakeMediaProvider provider;
+    private File root;
+    private OutputLayout layout;
+
+    @Before
+    public void setUp() throws IOException {
+        this.application = RuntimeEnvironment.getApplication();
+        this.provider = FakeMediaProvider.register(FakeMediaProvider.AUTHORITY);
+        this.root = this.folder.newFolder("sessions");
+        this.layout = new OutputLayout(this.root);
+    }
+
+    @Test
+    public void numbersTheNamesAlreadyTaken() throws IOException {
+        OutputLayout.Directory session = this.layout.getSessionDirectory("job-0");
+
+        File first = session.reserve("IMG_0001.jpg");
+        File second = session.reserve("IMG_0001.jpg");
+        File third = session.reserve("IMG_0001.jpg");
+        File other = session.reserve("IMG_0001.png");
+
+        assertEquals("IMG_0001.jpg", first.getName());
+        assertEquals("IMG_0001 (1).jpg", second.getName());
+        assertEquals("IMG_0001 (2).jpg", third.getName());
+        assertEquals("IMG_0001.png", other.getName());
+        assertTrue(third.exists());
+        assertEquals(0, third.length());
+    }
+
+    @Test
+    public void skipsTheNamesLeftByAnEarlierRunOfTheSession() throws IOException {
+        File directory = new File(this.root, "job-0");
+        directory.mkdirs();
+        new File(directory, "IMG_0001.jpg").createNewFile();
+        new File(directory, "IMG_0001 (1).jpg").createNewFile();
+
+        File file = this.layout.getSessionDirectory("job-0").reserve("IMG_0001.jpg");
+
+        assertEquals("IMG_0001 (2).jpg", file.getName());
+    }
+
+    @Test
+    public void keepsNamesInsideTheirDirectory() throws IOException {
+        OutputLayout.Directory session = this.layout.getSessionDirectory("job-0");
+
+        File file = session.reserve("../photo.jpg");
+
+        assertEquals(session.file, file.getParentFile());
+        assertEquals(".._photo.jpg", file.getName());
+    }
+
+    @Test
+    public void createsTheSessionDirectoryOnTheFirstReserve() throws IOException {
+        OutputLayout.Directory session = this.layout.getSessionDirectory("job-0");
+
+        assertFalse(session.file.exists());
+
+        session.reserve("IMG_0001.jpg");
+
+        assertTrue(session.file.isDirectory());
+    }
+
+    @Test
+    public void prunesTheSessionsOlderThanTheMaximumAge() throws IOException {
+        File old = this.session("old", "IMG_0001.jpg");
+        old.setLastModified(System.currentTimeMillis() - 8 * DAY);
+        File recent = this.session("recent", "IMG_0002.jpg");
+
+        this.layout.prune(OutputLayout.DEFAULT_MAX_AGE);
+
+        assertFalse(old.exists());
+        assertTrue(recent.exists());
+    }
+
+    @Test
+    public void keepsEverySessionWithoutAMaximumAge() throws IOException {
+        File old = this.session("old", "IMG_0001.jpg");
+        old.setLastModified(System.currentTimeMillis() - 365 * DAY);
+
+        this.layout.prune(0);
+
+        assertTrue(old.exists());
+    }
+
+    @Test
+    public void findsTheItemsPickedTwice() throws IOException {
+        File first = SyntheticMedia.write(this.folder.newFile("a.jpg"), new byte[0], 100 * 1024, 1);
+        File sameContent = this.folder.newFile("b.jpg");
+        Files.copy(first.toPath(), sameContent.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        File sameSize = SyntheticMedia.write(this.folder.newFile("c.jpg"), new byte[0], 100 * 1024, 2);
+        Uri uri = this.provider.add("1", "a.jpg", "image/jpeg", first);
+        List<Uri> uris = new ArrayList<>();
+        uris.add(uri);
+        uris.add(this.provider.add("2", "b.jpg", "image/jpeg", sameContent));
+        uris.add(this.provider.add("3", "c.jpg", "image/jpeg", sameSize));
+        uris.add(uri);
+        Map<Integer, MediaItemMetadata> items = this.resolve(uris);
+
+        Map<Integer, Integer> duplicates = OutputLayout.findDuplicates(this.application.getContentResolver(), items, true);
+        Map<Integer, Integer> byUri = OutputLayout.findDuplicates(this.application.getContentResolver(), items, false);
+
+        Map<Integer, Integer> expected = new HashMap<>();
+        expected.put(1, 0);
+        expected.put(3, 0);
+        assertEquals(expected, duplicates);
+        assertEquals(1, byUri.size());
+        assertEquals(Integer.valueOf(0), byUri.get(3));
+    }
+
+    private File session(String id, String name) throws IOException {
+        OutputLayout.Directory session = this.layout.getSessionDirectory(id);
+        session.reserve(name);
+        return session.file;
+    }
+
+    private Map<Integer, MediaItemMetadata> resolve(List<Uri> uris) {
+        List<MediaItemMetadata> resolved = MediaItemMetadata.resolve(this.application, uris);
+        Map<Integer, MediaItemMetadata> items = new HashMap<>();
+        for (int i = 0; i < resolved.size(); i++) {
+            items.put(i, resolved.get(i));
+        }
+        return items;
+    }
+}
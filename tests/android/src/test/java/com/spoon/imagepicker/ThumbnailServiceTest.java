@@ -0,0 +1,159 @@
+package com.spoon.imagepicker;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.util.Base64;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// Decodes and encodes real images, the legacy graphics shadows only pretend to
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@RunWith(RobolectricTestRunner.class)
+public class ThumbnailServiceTest {
+    private static final String PNG_PREFIX = "data:image/png;base64,";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ThumbnailService service;
+
+    /**
+     * Collects the answer to one request, on whichever thread it comes.
+     */
+    private static class Answer implements ThumbnailService.Callback {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile String dataUrl;
+        volatile Exception error;
+        volatile Thread thread;
+
+        @Override
+        public void onThumbnail(String dataUrl) {
+            this.dataUrl = dataUrl;
+            this.thread = Thread.currentThread();
+            this.done.countDown();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            this.error = e;
+            this.thread = Thread.currentThread();
+            this.done.countDown();
+        }
+
+        Answer await() throws InterruptedException {
+            assertTrue("No answer", this.done.await(10, TimeUnit.SECONDS));
+            return this;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        this.service = new ThumbnailService(RuntimeEnvironment.getApplication());
+    }
+
+    @After
+    public void tearDown() {
+        this.service.shutdown();
+    }
+
+    @Test
+    public void returnsAPreviewNoLargerThanTheMaximumEdge() throws Exception {
+        File image = this.image("photo.png", 400, 300);
+
+        Answer answer = this.request(image.getPath(), 100).await();
+
+        assertNull(answer.error);
+        assertTrue(answer.dataUrl.startsWith(PNG_PREFIX));
+        Bitmap preview = decode(answer.dataUrl);
+        assertEquals(100, preview.getWidth());
+        assertEquals(75, preview.getHeight());
+    }
+
+    @Test
+    public void answersFromTheCacheOnTheCallingThread() throws Exception {
+        File image = this.image("photo.png", 400, 300);
+        Answer first = this.request(image.getPath(), 100).await();
+
+        Answer second = this.request(image.getPath(), 100);
+
+        // Answered before request returned
+        assertEquals(0, second.done.getCount());
+        assertEquals(Thread.currentThread(), second.thread);
+        assertEquals(first.dataUrl, second.dataUrl);
+    }
+
+    @Test
+    public void answersEveryRequestOfAPreviewBeingGenerated() throws Exception {
+        File image = this.image("photo.png", 2000, 1500);
+
+        Answer first = this.request(image.getPath(), 100);
+        Answer second = this.request(image.getPath(), 100);
+
+        assertNotNull(first.await().dataUrl);
+        assertEquals(first.dataUrl, second.await().dataUrl);
+    }
+
+    @Test
+    public void reportsAnErrorForAnItemItCannotDecode() throws Exception {
+        File broken = SyntheticMedia.write(this.folder.newFile("broken.png"), SyntheticMedia.png(400, 300), 10 * 1024, 1);
+
+        Answer answer = this.request(broken.getPath(), 100).await();
+
+        assertNull(answer.dataUrl);
+        assertTrue(answer.error instanceof IOException);
+    }
+
+    @Test
+    public void answersWithAnErrorOnceShutDown() throws Exception {
+        File image = this.image("photo.png", 400, 300);
+        this.service.shutdown();
+
+        Answer answer = this.request(image.getPath(), 100).await();
+
+        assertNotNull(answer.error);
+    }
+
+    private Answer request(String path, int maxEdge) {
+        Answer answer = new Answer();
+        this.service.request(path, maxEdge, "png", answer);
+        return answer;
+    }
+
+    private File image(String name, int width, int height) throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.RED);
+        File file = this.folder.newFile(name);
+        try (OutputStream output = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, output);
+        } finally {
+            bitmap.recycle();
+        }
+        return file;
+    }
+
+    private static Bitmap decode(String dataUrl) {
+        byte[] bytes = Base64.decode(dataUrl.substring(PNG_PREFIX.length()), Base64.DEFAULT);
+        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+    }
+}
@@ -32,10 +32,78 @@ ImagePicker.prototype.requestReadPermission = function(callback, failureCallback
   return cordova.exec(callback, failureCallback, "ImagePicker", "requestReadPermission", []);
 };
 
+/*
+*	Android only. Reads a byte range of an item returned with copyFiles: false.
+*	callback receives an ArrayBuffer of at most length bytes, an empty buffer means the end
+*	of the file was reached. A single call reads at most 8 MB.
+*/
+ImagePicker.prototype.readFile = function(uri, offset, length, callback, failureCallback) {
+  return cordova.exec(callback, failureCallback, "ImagePicker", "readFile", [uri, offset, length]);
+};
+
+/*
+*	Android only. callback receives a data: url of a preview of path, an imported item's path
+*	or thumbnail, no larger than maxEdge (default 512) and encoded as format ('jpeg' (default),
+*	'png' or 'webp'). Previews are generated on demand and kept in memory, so a grid can ask
+*	for the cells it shows only.
+*/
+ImagePicker.prototype.getThumbnail = function(path, maxEdge, format, callback, failureCallback) {
+  return cordova.exec(callback, failureCallback, "ImagePicker", "getThumbnail", [path, maxEdge || 512, format || 'jpeg']);
+};
+
+/*
+*	Android only. Deletes every item kept by the import cache (see the useCache option), and
+*	the previews kept in memory by getThumbnail.
+*/
+ImagePicker.prototype.clearCache = function(callback, failureCallback) {
+  return cordova.exec(callback, failureCallback, "ImagePicker", "clearCache", []);
+};
+
+/*
+*	Android only. callback receives { entries, bytes, maxBytes, maxAge, hits, misses } for the
+*	import cache, maxAge is in milliseconds.
+*/
+ImagePicker.prototype.getCacheStats = function(callback, failureCallback) {
+  return cordova.exec(callback, failureCallback, "ImagePicker", "getCacheStats", []);
+};
+
+/*
+*	Android only. callback receives the metrics of the last getPictures call made with
+*	collectMetrics, or null.
+*/
+ImagePicker.prototype.getMetrics = function(callback, failureCallback) {
+  return cordova.exec(callback, failureCallback, "ImagePicker", "getMetrics", []);
+};
+
 ImagePicker.prototype.closeImagePicker = function(callback) {
   return cordova.exec(callback, null, "ImagePicker", "closeImagePicker", []);
 };
 
+/*
+*	Android only. Cancels the running import, or only the job with the given jobId (see the
+*	onJob option). callback receives true when an import was cancelled, its getPictures call
+*	then fails with 'Import cancelled'. The items imported so far can still be resumed.
+*/
+ImagePicker.prototype.cancelImport = function(jobId, callback, failureCallback) {
+  return cordova.exec(callback, failureCallback, "ImagePicker", "cancelImport", [jobId || null]);
+};
+
+/*
+*	Android only. Resumes an import that was cancelled or interrupted, for instance when the
+*	app process died. Items already imported are returned as is and only the remaining ones
+*	are imported. Without jobId, the job running when the activity was recreated, or else the
+*	most recent job, is resumed. success, fail and options are the ones of getPictures.
+*/
+ImagePicker.prototype.resumeImport = function(jobId, success, fail, options) {
+	if (!options) {
+		options = {};
+	}
+
+	this.validateOutputType(options);
+
+	return cordova.exec(this.eventHandler(success, options), fail, "ImagePicker", "resumeImport", [jobId || null, this.getParams(options)]);
+};
+
 /*
 *	success - success callback
 *	fail - error callback
@@ -47,8 +115,50 @@ ImagePicker.prototype.closeImagePicker = function(callback) {
 *		         image will be returned)
 *		.height - height to resize image to
 *		.quality - quality of resized image, defaults to 100
+*		.format - Android only. 'jpeg' or 'webp', format of resized images, defaults to 'jpeg'
 *       .outputType - type of output returned. defaults to file URIs.
 *					  Please see ImagePicker.OutputType for available values.
+*		.parallelism - Android only. Number of selected items imported concurrently, defaults to 4.
+*		.copyFiles - Android only. When false, picked items are not copied to the app storage,
+*		             their content uri is returned instead, defaults to true.
+*		.onItem - Android only. function(item, index) called as soon as each item is imported,
+*		          before success is called with the full result. index is the position of the
+*		          item in the selection, items can arrive in any order.
+*		.thumbnailMaxEdge - Android only. Maximum width and height of video thumbnails, defaults to 512.
+*		.thumbnailFormat - Android only. 'jpeg', 'png' or 'webp', defaults to 'jpeg'.
+*		.thumbnailQuality - Android only. Quality of video thumbnails, defaults to 80.
+*		.lazyThumbnails - Android only. Skips the video thumbnails during the import, their thumbnail
+*		                  is empty and previews are asked for with getThumbnail. Defaults to false.
+*		.useCache - Android only. Keeps imported items in a cache so that picking them again skips
+*		            the copy and the thumbnail, cached results have cached set to true. Defaults to false.
+*		.maxCacheSize - Android only. Size of the cache in MB, defaults to 500.
+*		.maxCacheAge - Android only. Days after which an unused cached item is evicted, defaults to 30.
+*		.collectMetrics - Android only. Times every import stage, the metrics of the call are set as
+*		                  the metrics property of the results array, and returned by getMetrics.
+*		.onMetrics - Android only. function(metrics) called with the metrics of the call before success.
+*		.base64Mode - Android only. How BASE64_STRING output is delivered: 'chunks' (default) streams
+*		              the encoding from native, 'file' writes it to a sidecar file returned as base64Path.
+*		.maxBase64Size - Android only. Items above this size in MB are returned as FILE_URI with
+*		                 base64Fallback set to true, defaults to 10.
+*		.onBase64Chunk - Android only. function(chunk) receiving the encoded chunks (chunk.index,
+*		                 chunk.sequence, chunk.data, chunk.last) instead of having them joined into
+*		                 item.base64 before success is called.
+*		.onProgress - Android only. function(progress) called while items are copied, with
+*		              progress.index, progress.bytesCopied and progress.totalBytes for the current
+*		              item, progress.totalBytesCopied, progress.itemsDone and progress.itemCount for
+*		              the whole selection.
+*		.progressMode - Android only. UI shown while importing: 'blocking' (default) a full screen
+*		                spinner blocking input, 'determinate' a progress bar at the top of the screen
+*		                which leaves input enabled, 'headless' no UI, use onProgress instead.
+*		.onJob - Android only. function(jobId) called when the import starts, the id can be used
+*		         with cancelImport and resumeImport. It is also set as results.jobId.
+*		.upload - Android only. { url, method, headers, chunkSize, maxInFlightChunks, concurrency },
+*		          streams the picked items to url in chunks instead of copying them, see the README.
+*
+*
+*	Android only. The items left out of the import are listed in the rejected property of the
+*	results array, with their index in the selection, uri and reason ('maxImageCount',
+*	'maxPhotoSize' or 'maxVideoSize').
 */
 ImagePicker.prototype.getPictures = function(success, fail, options) {
 	if (!options) {
@@ -57,7 +167,11 @@ ImagePicker.prototype.getPictures = function(success, fail, options) {
 
 	this.validateOutputType(options);
 
-	var params = {
+	return cordova.exec(this.eventHandler(success, options), fail, "ImagePicker", "getPictures", [this.getParams(options)]);
+};
+
+ImagePicker.prototype.getParams = function(options) {
+	return {
 		maximumImagesCount: options.maximumImagesCount ? options.maximumImagesCount : 15,
 		maxPhotoSize: options.maxPhotoSize ? options.maxPhotoSize : 15,
 		maxVideoSize: options.maxVideoSize ? options.maxVideoSize : 5,
@@ -65,14 +179,73 @@ ImagePicker.prototype.getPictures = function(success, fail, options) {
 		width: options.width ? options.width : 0,
 		height: options.height ? options.height : 0,
 		quality: options.quality ? options.quality : 100,
+		format: options.format ? options.format : 'jpeg',
 		allow_video: options.allow_video ? options.allow_video : false,
 		title: options.title ? options.title : 'Select an Album', // the default is the message of the old plugin impl
 		message: options.message ? options.message : null, // the old plugin impl didn't have it, so passing null by default
 		outputType: options.outputType ? options.outputType : this.OutputType.FILE_URI,
-		disable_popover: options.disable_popover ? options.disable_popover : false // Disable the iOS popover as seen on iPad
+		disable_popover: options.disable_popover ? options.disable_popover : false, // Disable the iOS popover as seen on iPad
+		parallelism: options.parallelism ? options.parallelism : 4,
+		copyFiles: options.copyFiles !== false,
+		streamResults: typeof options.onItem === 'function',
+		reportProgress: typeof options.onProgress === 'function',
+		thumbnailMaxEdge: options.thumbnailMaxEdge ? options.thumbnailMaxEdge : 512,
+		thumbnailFormat: options.thumbnailFormat ? options.thumbnailFormat : 'jpeg',
+		thumbnailQuality: options.thumbnailQuality ? options.thumbnailQuality : 80,
+		lazyThumbnails: options.lazyThumbnails ? options.lazyThumbnails : false,
+		useCache: options.useCache ? options.useCache : false,
+		maxCacheSize: options.maxCacheSize ? options.maxCacheSize : 500,
+		maxCacheAge: options.maxCacheAge ? options.maxCacheAge : 30,
+		collectMetrics: options.collectMetrics ? options.collectMetrics : typeof options.onMetrics === 'function',
+		base64Mode: options.base64Mode ? options.base64Mode : 'chunks',
+		maxBase64Size: options.maxBase64Size ? options.maxBase64Size : 10,
+		progressMode: options.progressMode ? options.progressMode : 'blocking',
+		upload: options.upload ? options.upload : null,
+		useEvents: true
 	};
+};
 
-	return cordova.exec(success, fail, "ImagePicker", "getPictures", [params]);
+/*
+*	Dispatches the events sent by the native side while streaming results, plain results
+*	(iOS, or Android without streaming) are passed to success as is.
+*/
+ImagePicker.prototype.eventHandler = function(success, options) {
+	var base64Chunks = {};
+	return function(result) {
+		if (!result || !result.type) {
+			success(result);
+		} else if (result.type === 'base64') {
+			if (typeof options.onBase64Chunk === 'function') {
+				options.onBase64Chunk(result);
+			} else {
+				(base64Chunks[result.index] = base64Chunks[result.index] || [])[result.sequence] = result.data;
+			}
+		} else if (result.type === 'job') {
+			if (typeof options.onJob === 'function') {
+				options.onJob(result.jobId);
+			}
+		} else if (result.type === 'item') {
+			options.onItem(result.item, result.index);
+		} else if (result.type === 'progress') {
+			options.onProgress(result);
+		} else if (result.type === 'complete') {
+			result.results.jobId = result.jobId;
+			result.results.rejected = result.rejected || [];
+			if (result.metrics) {
+				result.results.metrics = result.metrics;
+				if (typeof options.onMetrics === 'function') {
+					options.onMetrics(result.metrics);
+				}
+			}
+			result.results.forEach(function(item) {
+				if (base64Chunks[item.index]) {
+					item.base64 = base64Chunks[item.index].join('');
+					delete base64Chunks[item.index];
+				}
+			});
+			success(result.results);
+		}
+	};
 };
 
 window.imagePicker = new ImagePicker();